@@ -223,6 +223,17 @@ public class Main {
 
     System.out.println("Download files completed.\nOutput is in the output folder created.");
 
+    // The run reports are downloaded for failed runs too, they hold the stages that finished
+    System.out.println("Downloading run reports from S3");
+    for (String step : new String[] {"measures_association", "similarity_vectors"}) {
+      ListObjectsV2Request reportListObjectRequest =
+          ListObjectsV2Request.builder()
+              .bucket(outBucket)
+              .prefix(String.format("%s/output/run-report.json", step))
+              .build();
+      downloadBucketDirectory(reportListObjectRequest, false);
+    }
+
     System.out.println("Downloading log files from S3");
     ListObjectsV2Request logListObjectRequest =
         ListObjectsV2Request.builder()
@@ -1,5 +1,9 @@
 package classifier;
 
+import similarity_vectors.AssociationMeasure;
+import similarity_vectors.SimilarityKernel;
+import similarity_vectors.VectorSimilarity;
+
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
@@ -8,40 +12,24 @@ public class ARFFCreator {
     public static final String ARFF_FILENAME = "word_pair_similarity.arff";
     private static Map<Integer, String> samplesToWordPair;
 
-    public static String arffHeader =
-            "% Lexeme Pairs Similarity Vectors\n\n" +
-            "@relation similarity_vectors\n\n" +
-            "% Plain frequency measures\n" +
-            "@attribute compared_pair\tstring\n" +
-            "@attribute plain_manhattan_distance\treal\n" +
-            "@attribute plain_euclidean_distance\treal\n" +
-            "@attribute plain_cosine_distance\treal\n" +
-            "@attribute plain_jaccard_measure\treal\n" +
-            "@attribute plain_dice_measure\treal\n" +
-            "@attribute plain_jensen_shannon_divergence\treal\n" +
-            "% Relative frequency measures\n" +
-            "@attribute relative_manhattan_distance\treal\n" +
-            "@attribute relative_euclidean_distance\treal\n" +
-            "@attribute relative_cosine_distance\treal\n" +
-            "@attribute relative_jaccard_measure\treal\n" +
-            "@attribute relative_dice_measure\treal\n" +
-            "@attribute relative_jensen_shannon_divergence\treal\n" +
-            "% PMI frequency measures\n" +
-            "@attribute pmi_manhattan_distance\treal\n" +
-            "@attribute pmi_euclidean_distance\treal\n" +
-            "@attribute pmi_cosine_distance\treal\n" +
-            "@attribute pmi_jaccard_measure\treal\n" +
-            "@attribute pmi_dice_measure\treal\n" +
-            "@attribute pmi_jensen_shannon_divergence\treal\n" +
-            "% T-Test frequency measures\n" +
-            "@attribute t_test_manhattan_distance\treal\n" +
-            "@attribute t_test_euclidean_distance\treal\n" +
-            "@attribute t_test_cosine_distance\treal\n" +
-            "@attribute t_test_jaccard_measure\treal\n" +
-            "@attribute t_test_dice_measure\treal\n" +
-            "@attribute t_test_jensen_shannon_divergence\treal\n\n" +
-            "@attribute similar\t{FALSE,TRUE}\n\n" +
-            "@data\n\n";
+    public static String arffHeader = createHeader();
+
+    /** Attributes of the similarity vector positions, in the order of the registered measures */
+    private static String createHeader() {
+        StringBuilder header = new StringBuilder(
+                "% Lexeme Pairs Similarity Vectors\n\n" +
+                "@relation similarity_vectors\n\n" +
+                "@attribute compared_pair\tstring\n");
+        for (AssociationMeasure measure : SimilarityKernel.MEASURES) {
+            header.append(String.format("%% %s measures\n", measure.getDescription()));
+            for (VectorSimilarity similarity : SimilarityKernel.SIMILARITIES) {
+                header.append(String.format("@attribute %s_%s\treal\n", measure.getName(), similarity.getName()));
+            }
+        }
+        return header.append(
+                "\n@attribute similar\t{FALSE,TRUE}\n\n" +
+                "@data\n\n").toString();
+    }
 
 
     public static String createARFF(String classifierInputPath, String classifierOutputPath) {
@@ -1,15 +1,33 @@
 package measures_association;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+/**
+ * Legacy format: <lexeme, feature, plain-frequency, relative-frequency, pmi, t-test> as Text and doubles.
+ * Compact format: <flags, [lexeme], feature, vlong plain-frequency, relative-frequency, pmi, t-test>
+ * where the lexeme is omitted when the record key already holds it and the measures are floats or doubles.
+ * The flags byte is 0x80-0x87, never the first byte of the legacy lexeme vint length, so both are readable.
+ */
 public class AssociationMeasuresWritable implements WritableComparable<AssociationMeasuresWritable> {
 
+    public static final String COMPACT = "compactMeasures";
+    public static final String COMPACT_FLOAT = "compactMeasuresFloat";
+
+    public static final int LEGACY_FORMAT = 0;
+    private static final int COMPACT_FORMAT = 0x80;
+    private static final int LEXEME_OMITTED = 0x01;
+    private static final int FLOAT_MEASURES = 0x02;
+
+    private int format = LEGACY_FORMAT;
+
     private Text lexeme;
     private Text feature;
 
@@ -28,6 +46,7 @@ public class AssociationMeasuresWritable implements WritableComparable<Associati
     }
 
     public AssociationMeasuresWritable(AssociationMeasuresWritable o) {
+        format = o.format;
         lexeme = new Text(o.getLexeme().toString());
         feature = new Text(o.getFeature().toString());
         plainFrequency = new DoubleWritable(o.getPlainFrequency().get());
@@ -55,24 +74,94 @@ public class AssociationMeasuresWritable implements WritableComparable<Associati
         return feature.compareTo(o.feature);
     }
 
+    /** The write format of the job configuration, lexemeInKey when the record key already holds the lexeme */
+    public static int getFormat(Configuration conf, boolean lexemeInKey) {
+        if (!conf.getBoolean(COMPACT, false)) return LEGACY_FORMAT;
+        return COMPACT_FORMAT
+                | (lexemeInKey ? LEXEME_OMITTED : 0)
+                | (conf.getBoolean(COMPACT_FLOAT, false) ? FLOAT_MEASURES : 0);
+    }
+
+    public void setFormat(int format) {
+        this.format = format;
+    }
+
+    /** Sets the lexeme from the record key if the record was written without it */
+    public void fillOmittedLexeme(Text keyLexeme) {
+        if ((format & LEXEME_OMITTED) != 0) {
+            lexeme.set(keyLexeme);
+        }
+    }
+
     @Override
     public void write(DataOutput dataOutput) throws IOException {
-        lexeme.write(dataOutput);
+        if (format == LEGACY_FORMAT) {
+            lexeme.write(dataOutput);
+            feature.write(dataOutput);
+            plainFrequency.write(dataOutput);
+            relativeFrequency.write(dataOutput);
+            pmi.write(dataOutput);
+            tTest.write(dataOutput);
+            return;
+        }
+        dataOutput.writeByte(format);
+        if ((format & LEXEME_OMITTED) == 0) {
+            lexeme.write(dataOutput);
+        }
         feature.write(dataOutput);
-        plainFrequency.write(dataOutput);
-        relativeFrequency.write(dataOutput);
-        pmi.write(dataOutput);
-        tTest.write(dataOutput);
+        WritableUtils.writeVLong(dataOutput, (long) plainFrequency.get());
+        if ((format & FLOAT_MEASURES) != 0) {
+            dataOutput.writeFloat((float) relativeFrequency.get());
+            dataOutput.writeFloat((float) pmi.get());
+            dataOutput.writeFloat((float) tTest.get());
+        } else {
+            dataOutput.writeDouble(relativeFrequency.get());
+            dataOutput.writeDouble(pmi.get());
+            dataOutput.writeDouble(tTest.get());
+        }
     }
 
     @Override
     public void readFields(DataInput dataInput) throws IOException {
-        lexeme.readFields(dataInput);
+        byte first = dataInput.readByte();
+        if ((first & 0xF8) != COMPACT_FORMAT) { // Legacy, the first byte starts the lexeme vint length
+            format = LEGACY_FORMAT;
+            lexeme.readWithKnownLength(dataInput, readVIntRemainder(first, dataInput));
+            feature.readFields(dataInput);
+            plainFrequency.readFields(dataInput);
+            relativeFrequency.readFields(dataInput);
+            pmi.readFields(dataInput);
+            tTest.readFields(dataInput);
+            return;
+        }
+        format = first & 0xFF;
+        if ((format & LEXEME_OMITTED) == 0) {
+            lexeme.readFields(dataInput);
+        } else {
+            lexeme.clear();
+        }
         feature.readFields(dataInput);
-        plainFrequency.readFields(dataInput);
-        relativeFrequency.readFields(dataInput);
-        pmi.readFields(dataInput);
-        tTest.readFields(dataInput);
+        plainFrequency.set(WritableUtils.readVLong(dataInput));
+        if ((format & FLOAT_MEASURES) != 0) {
+            relativeFrequency.set(dataInput.readFloat());
+            pmi.set(dataInput.readFloat());
+            tTest.set(dataInput.readFloat());
+        } else {
+            relativeFrequency.set(dataInput.readDouble());
+            pmi.set(dataInput.readDouble());
+            tTest.set(dataInput.readDouble());
+        }
+    }
+
+    /** Reads the rest of a vint whose first byte was already read */
+    private static int readVIntRemainder(byte first, DataInput dataInput) throws IOException {
+        int size = WritableUtils.decodeVIntSize(first);
+        if (size == 1) return first;
+        long value = 0;
+        for (int i = 0; i < size - 1; ++i) {
+            value = (value << 8) | dataInput.readUnsignedByte();
+        }
+        return (int) (WritableUtils.isNegativeVInt(first) ? ~value : value);
     }
 
     public Text getLexeme() {
@@ -0,0 +1,89 @@
+package measures_association;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import utils.ProfilingReducer;
+import utils.VocabularyDictionary;
+
+import java.io.IOException;
+
+public class BuildVocabularyDictionary {
+
+  /**
+   * Input shape:
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>
+   *    value: <count(L=lexeme) | count(F=feature) | count(F=feature, L=lexeme)>
+   * Output shape:
+   *    key: <count(L=lexeme) | count(F=feature)> (sorted in decreasing order)
+   *    value: <<LEXEME, lexeme> | <FEATURE, feature>>
+   */
+  public static class MapperClass
+      extends Mapper<SyntacticKeyWritable, LongWritable, LongWritable, SyntacticPairWritable> {
+
+    @Override
+    public void map(SyntacticKeyWritable syntacticPart, LongWritable totalSum, Context context)
+        throws IOException, InterruptedException {
+      switch (syntacticPart.getType()) {
+        case LEXEME:
+          context.write(
+              totalSum,
+              new SyntacticPairWritable(
+                  SyntacticPairWritable.Type.LEXEME, syntacticPart.getLexeme()));
+          break;
+        case FEATURE:
+          context.write(
+              totalSum,
+              new SyntacticPairWritable(
+                  SyntacticPairWritable.Type.FEATURE, syntacticPart.getFeature()));
+          break;
+        default: // <lexeme, feature> pairs are not part of the vocabulary
+          break;
+      }
+    }
+  }
+
+  /**
+   * Single reducer assigning increasing ids in decreasing count order.
+   * Input shape:
+   *    key: <count(L=lexeme) | count(F=feature)>
+   *    value: [<LEXEME, lexeme> | <FEATURE, feature>]
+   * Output shape (named outputs lexemes, features):
+   *    key: <lexeme | feature>
+   *    value: <id>
+   */
+  public static class ReducerClass
+      extends ProfilingReducer<LongWritable, SyntacticPairWritable, Text, IntWritable> {
+
+    private MultipleOutputs<Text, IntWritable> outputs;
+    private final IntWritable id = new IntWritable();
+    private int nextLexemeId;
+    private int nextFeatureId;
+
+    @Override
+    protected void setup(Context context) {
+      outputs = new MultipleOutputs<>(context);
+    }
+
+    @Override
+    public void reduce(LongWritable count, Iterable<SyntacticPairWritable> elements, Context context)
+        throws IOException, InterruptedException {
+      for (SyntacticPairWritable element : elements) {
+        if (element.getType() == SyntacticPairWritable.Type.LEXEME) {
+          id.set(nextLexemeId++);
+          outputs.write(VocabularyDictionary.LEXEMES, element.getElement(), id);
+        } else {
+          id.set(nextFeatureId++);
+          outputs.write(VocabularyDictionary.FEATURES, element.getElement(), id);
+        }
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      outputs.close();
+    }
+  }
+}
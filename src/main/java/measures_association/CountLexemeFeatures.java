@@ -1,48 +1,124 @@
 package measures_association;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.WritableComparable;
-import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
-import org.apache.hadoop.mapreduce.Reducer;
-import utils.SyntacticTextUtils;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import utils.ProfilingReducer;
+import utils.VocabularyDictionary;
 
 import java.io.IOException;
+import java.util.Map;
 
 public class CountLexemeFeatures {
 
+  // Named output of the feature counts, read by both the shuffle and the broadcast measures joins
+  public static final String FEATURE_COUNTS = "featureCounts";
+
   /**
+   * Lexemes and features are replaced by their dictionary tokens when dictionary encoding is enabled.
+   * The pairs of a hot lexeme are salted by their feature and its count is replicated to every salt bucket.
    * Input shape:
-   *    key: <lexeme | feature | <lexeme, feature>>
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>
    *    value: value: <count(L=lexeme) | count(F=feature) | count(F=feature, L=lexeme)>
    * Output shape:
    *    key: <<LEXEME, lexeme> | <FEATURE, feature> | <LEXEME_FEATURE, lexeme>>
-   *    value: <<'L', count(L=lexeme)> | <'F', count(F=feature)> | <'LF', <feature, count(F=feature, L=lexeme)>>>
+   *    value: <<LEXEME_COUNT, count(L=lexeme)> | <FEATURE_COUNT, count(F=feature)> | <FEATURE_PAIR_COUNT, feature, count(F=feature, L=lexeme)>>
    */
   public static class MapperClass
-      extends Mapper<Text, LongWritable, SyntacticPairWritable, TextPairWritable> {
+      extends Mapper<SyntacticKeyWritable, LongWritable, SyntacticPairWritable, CountTupleWritable> {
+
+    // Lexeme and feature dictionaries, null when dictionary encoding is disabled
+    private VocabularyDictionary lexemes;
+    private VocabularyDictionary features;
+    private final Text word = new Text();
+    private final Text token = new Text();
+    private final CountTupleWritable countTuple = new CountTupleWritable();
+    private Map<Text, Integer> hotLexemes; // lexeme -> salt buckets
 
     @Override
-    public void map(Text syntacticPart, LongWritable totalSum, Context context)
+    protected void setup(Context context) throws IOException {
+      Configuration conf = context.getConfiguration();
+      if (conf.getBoolean(VocabularyDictionary.ENABLED, false)) {
+        lexemes = VocabularyDictionary.load(conf, VocabularyDictionary.LEXEMES);
+        features = VocabularyDictionary.load(conf, VocabularyDictionary.FEATURES);
+      }
+      hotLexemes = HotKeySampler.getHotKeys(conf, HotKeySampler.HOT_LEXEMES);
+    }
+
+    /** Returns the salt buckets of the lexeme, 0 if it is not a hot lexeme */
+    private int getSaltBuckets(String lexeme) {
+      if (hotLexemes.isEmpty()) return 0;
+      word.set(lexeme);
+      Integer buckets = hotLexemes.get(word);
+      return buckets == null ? 0 : buckets;
+    }
+
+    /** Returns the dictionary token of the word, the word itself if encoding is disabled or null if missing */
+    private String encode(VocabularyDictionary dictionary, String element) {
+      if (dictionary == null) return element;
+      word.set(element);
+      return dictionary.encode(word, token) ? token.toString() : null;
+    }
+
+    /** Returns the dictionary token of a lexeme or feature record, counting the records missing from the dictionary */
+    private String encodeRecord(VocabularyDictionary dictionary, String element, Context context) {
+      String encoded = encode(dictionary, element);
+      if (encoded == null) {
+        context.getCounter(CounterTypes.DICTIONARY_MISSES).increment(1);
+      }
+      return encoded;
+    }
+
+    @Override
+    public void map(SyntacticKeyWritable syntacticPart, LongWritable totalSum, Context context)
         throws IOException, InterruptedException {
-      if (SyntacticTextUtils.isPair(syntacticPart)) {
-        String[] pair = SyntacticTextUtils.splitPairTriplet(syntacticPart);
-        String lexeme = pair[0];
-        String feature = pair[1];
-        context.write( // Emit <LEXEME_FEATURE, lexeme> -> <'LF', <feature, count(L=lexeme, F=feature)>>
-            new SyntacticPairWritable(SyntacticPairWritable.Type.LEXEME_FEATURE, lexeme),
-            new TextPairWritable(
-                "LF", SyntacticTextUtils.createCountText(feature, totalSum.get())));
-      } else if (SyntacticTextUtils.isFeature(syntacticPart)) {
-        context.write( // Emit <FEATURE, feature> -> <'F', count(F=feature)>
-            new SyntacticPairWritable(SyntacticPairWritable.Type.FEATURE, syntacticPart),
-            new TextPairWritable("F", totalSum.toString()));
-      } else {
-        context.write( // Emit <LEXEME, lexeme> -> <'L', count(L=lexeme)>
-            new SyntacticPairWritable(SyntacticPairWritable.Type.LEXEME, syntacticPart),
-            new TextPairWritable("L", totalSum.toString()));
+      switch (syntacticPart.getType()) {
+        case LEXEME_FEATURE: {
+          String lexeme = encode(lexemes, syntacticPart.getLexeme().toString());
+          String feature = encode(features, syntacticPart.getFeature());
+          if (lexeme == null || feature == null) { // The dictionary holds every lexeme and feature left by the parse stage pruning
+            context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+            return;
+          }
+          countTuple.setFeaturePairCount(feature, totalSum.get());
+          int buckets = getSaltBuckets(lexeme);
+          if (buckets > 0) {
+            countTuple.setSalt((feature.hashCode() & Integer.MAX_VALUE) % buckets);
+          }
+          context.write( // Emit <LEXEME_FEATURE, lexeme> -> <FEATURE_PAIR_COUNT, feature, count(L=lexeme, F=feature)>
+              new SyntacticPairWritable(SyntacticPairWritable.Type.LEXEME_FEATURE, lexeme),
+              countTuple);
+          break;
+        }
+        case FEATURE: {
+          String feature = encodeRecord(features, syntacticPart.getFeature(), context);
+          if (feature == null) return;
+          countTuple.setFeatureCount(totalSum.get());
+          context.write( // Emit <FEATURE, feature> -> <FEATURE_COUNT, count(F=feature)>
+              new SyntacticPairWritable(SyntacticPairWritable.Type.FEATURE, feature),
+              countTuple);
+          break;
+        }
+        case LEXEME: {
+          String lexeme = encodeRecord(lexemes, syntacticPart.getLexeme().toString(), context);
+          if (lexeme == null) return;
+          countTuple.setLexemeCount(totalSum.get());
+          SyntacticPairWritable lexemeKey =
+              new SyntacticPairWritable(SyntacticPairWritable.Type.LEXEME, lexeme);
+          int buckets = getSaltBuckets(lexeme);
+          if (buckets == 0) {
+            context.write(lexemeKey, countTuple); // Emit <LEXEME, lexeme> -> <LEXEME_COUNT, count(L=lexeme)>
+            break;
+          }
+          for (int salt = 0; salt < buckets; ++salt) { // Every salt bucket of a hot lexeme needs its count
+            countTuple.setSalt(salt);
+            context.write(lexemeKey, countTuple);
+          }
+          break;
+        }
       }
     }
   }
@@ -50,84 +126,82 @@ public class CountLexemeFeatures {
   /**
    * Input shape:
    *    key: <<LEXEME, lexeme> | <FEATURE, feature> | <LEXEME_FEATURE, lexeme>>
-   *    value: <<'L', count(L=lexeme)> | <'F', count(F=feature)> | <'LF', <feature, count(L=lexeme, F=feature)>>>
-   * Output shape:
+   *    value: <<LEXEME_COUNT, count(L=lexeme)> | <FEATURE_COUNT, count(F=feature)> | <FEATURE_PAIR_COUNT, feature, count(L=lexeme, F=feature)>>
+   * Output shape (feature counts go to the featureCounts named output):
    *    key: <<FEATURE, feature> | <LEXEME_FEATURE, feature>>
-   *    value: <count(F=feature) | <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>
+   *    value: <<FEATURE_COUNT, count(F=feature)> | <LEXEME_TRIPLET, lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>
    */
   public static class ReducerClass
-      extends Reducer<SyntacticPairWritable, TextPairWritable, SyntacticPairWritable, Text> {
+      extends ProfilingReducer<SyntacticPairWritable, CountTupleWritable, SyntacticPairWritable, CountTupleWritable> {
+
+    private final CountTupleWritable lexemeTriplet = new CountTupleWritable();
+    private MultipleOutputs<SyntacticPairWritable, CountTupleWritable> outputs;
+
+    @Override
+    protected void setup(Context context) {
+      outputs = new MultipleOutputs<>(context);
+    }
 
     @Override
     public void reduce(
-        SyntacticPairWritable syntacticPart, Iterable<TextPairWritable> countPairs, Context context)
+        SyntacticPairWritable syntacticPart, Iterable<CountTupleWritable> counts, Context context)
         throws IOException, InterruptedException {
       Long currentLexemeCount = null; // count(L=lexeme)
 
-      for (TextPairWritable countPair : countPairs) {
-        String tag = countPair.getFirst().toString();
-        switch (tag) {
-          case "L":
-            currentLexemeCount = Long.parseLong(countPair.getSecond().toString());
+      for (CountTupleWritable count : counts) {
+        switch (count.getTag()) {
+          case CountTupleWritable.LEXEME_COUNT:
+            currentLexemeCount = count.getCount();
             break;
-          case "F":
-            context.write( // Emit key: feature, value: count(F=feature)
+          case CountTupleWritable.FEATURE_COUNT:
+            outputs.write( // Emit key: feature, value: count(F=feature)
+                FEATURE_COUNTS,
                 new SyntacticPairWritable(
                     SyntacticPairWritable.Type.FEATURE, syntacticPart.getElement()),
-                countPair.getSecond());
+                count);
+            // Sizes the broadcast join table before the measures stage starts
+            context.getCounter(CounterTypes.FEATURE_COUNT_RECORDS).increment(1);
+            context
+                .getCounter(CounterTypes.FEATURE_COUNT_KEY_BYTES)
+                .increment(syntacticPart.getElement().getLength());
             break;
-          case "LF":
-            if (currentLexemeCount != null) {
-              String[] pair = SyntacticTextUtils.splitPairTriplet(countPair.getSecond());
-              String feature = pair[0];
-              long countLexemeFeature = Long.parseLong(pair[1]);
-              context.write( // Emit key: feature, value: <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>
-                      new SyntacticPairWritable(SyntacticPairWritable.Type.LEXEME_FEATURE, feature),
-                      SyntacticTextUtils.createLexemeFeatureTripletText(
-                          syntacticPart.getElement().toString(),
-                          countLexemeFeature,
-                          currentLexemeCount));
+          case CountTupleWritable.FEATURE_PAIR_COUNT:
+            if (currentLexemeCount == null) { // The lexeme was pruned by the parse stage
+              context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+              break;
             }
+            lexemeTriplet.setLexemeTriplet(
+                syntacticPart.getElement(), count.getCount(), currentLexemeCount);
+            context.write( // Emit key: feature, value: <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>
+                new SyntacticPairWritable(
+                    SyntacticPairWritable.Type.LEXEME_FEATURE, count.getElement()),
+                lexemeTriplet);
             break;
         }
       }
     }
-  }
-
-  public static class PartitionerClass extends Partitioner<SyntacticPairWritable, TextPairWritable> {
 
-    /** <LEXEME_FEATURE, lexeme> and <LEXEME, lexeme> will arrive to same reducer */
     @Override
-    public int getPartition(SyntacticPairWritable key, TextPairWritable value, int numPartitions) {
-      return (key.getElement().hashCode() & 0xFFFFFFF) % numPartitions;
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      outputs.close();
     }
   }
 
-  /** Sort the keys so that <LEXEME | FEATURE> tags will arrive before <LEXEME_FEATURE> tag for every equal lexeme */
-  public static class CountLexemeFeaturesComparator extends WritableComparator {
-
-    protected CountLexemeFeaturesComparator() {
-      super(SyntacticPairWritable.class, true);
-    }
+  public static class PartitionerClass extends Partitioner<SyntacticPairWritable, CountTupleWritable> {
 
+    /**
+     * <LEXEME_FEATURE, lexeme> and <LEXEME, lexeme> will arrive to same reducer,
+     * a hot lexeme is spread over the next reducers by the salt of its tuples
+     */
     @Override
-    public int compare(WritableComparable w1, WritableComparable w2) {
-      SyntacticPairWritable a = (SyntacticPairWritable) w1;
-      SyntacticPairWritable b = (SyntacticPairWritable) w2;
-      return a.compareTo(b);
+    public int getPartition(SyntacticPairWritable key, CountTupleWritable value, int numPartitions) {
+      int partition = key.getElement().hashCode() & 0xFFFFFFF;
+      return (value.getSalt() < 0 ? partition : partition + value.getSalt()) % numPartitions;
     }
   }
 
-  public static class CountLexemeFeaturesGroupingComparator extends WritableComparator {
-    protected CountLexemeFeaturesGroupingComparator() {
-      super(SyntacticPairWritable.class, true);
-    }
+  /** Sort the keys so that <LEXEME | FEATURE> tags will arrive before <LEXEME_FEATURE> tag for every equal lexeme */
+  public static class CountLexemeFeaturesComparator extends SyntacticPairWritable.Comparator {}
 
-    @Override
-    public int compare(WritableComparable w1, WritableComparable w2) {
-      SyntacticPairWritable a = (SyntacticPairWritable) w1;
-      SyntacticPairWritable b = (SyntacticPairWritable) w2;
-      return a.getElement().toString().compareTo(b.getElement().toString());
-    }
-  }
+  public static class CountLexemeFeaturesGroupingComparator extends SyntacticPairWritable.ElementComparator {}
 }
@@ -0,0 +1,163 @@
+package measures_association;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Tagged count values of the count and measures stages, serialized as the tag byte followed by:
+ *    LEXEME_COUNT: <count(L=lexeme)>
+ *    FEATURE_COUNT: <count(F=feature)>
+ *    FEATURE_PAIR_COUNT: <feature, count(F=feature, L=lexeme)>
+ *    LEXEME_TRIPLET: <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>
+ * Counts are written as vlongs. A salted tuple of a hot key sets the high bit of the tag byte and
+ * writes its salt bucket as a vint right after it.
+ */
+public class CountTupleWritable implements Writable {
+
+  public static final byte LEXEME_COUNT = 'L';
+  public static final byte FEATURE_COUNT = 'F';
+  public static final byte FEATURE_PAIR_COUNT = 'P';
+  public static final byte LEXEME_TRIPLET = 'T';
+  private static final int SALTED = 0x80;
+
+  private byte tag;
+  private final Text element;
+  private long count;
+  private long lexemeCount;
+  private int salt = -1; // Salt bucket of a hot key, -1 when not salted
+
+  public CountTupleWritable() {
+    tag = LEXEME_COUNT;
+    element = new Text();
+  }
+
+  public void setLexemeCount(long count) {
+    set(LEXEME_COUNT, null, count, 0);
+  }
+
+  public void setFeatureCount(long count) {
+    set(FEATURE_COUNT, null, count, 0);
+  }
+
+  public void setFeaturePairCount(String feature, long countLexemeFeature) {
+    element.set(feature);
+    set(FEATURE_PAIR_COUNT, element, countLexemeFeature, 0);
+  }
+
+  public void setLexemeTriplet(Text lexeme, long countLexemeFeature, long countLexeme) {
+    set(LEXEME_TRIPLET, lexeme, countLexemeFeature, countLexeme);
+  }
+
+  private void set(byte tag, Text element, long count, long lexemeCount) {
+    this.tag = tag;
+    if (element == null) {
+      this.element.clear();
+    } else if (element != this.element) {
+      this.element.set(element);
+    }
+    this.count = count;
+    this.lexemeCount = lexemeCount;
+    this.salt = -1;
+  }
+
+  /** Salts the tuple of a hot key so it is partitioned to the given bucket of its key */
+  public void setSalt(int salt) {
+    this.salt = salt;
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    if (salt < 0) {
+      dataOutput.writeByte(tag);
+    } else {
+      dataOutput.writeByte(tag | SALTED);
+      WritableUtils.writeVInt(dataOutput, salt);
+    }
+    switch (tag) {
+      case FEATURE_PAIR_COUNT:
+        element.write(dataOutput);
+        WritableUtils.writeVLong(dataOutput, count);
+        break;
+      case LEXEME_TRIPLET:
+        element.write(dataOutput);
+        WritableUtils.writeVLong(dataOutput, count);
+        WritableUtils.writeVLong(dataOutput, lexemeCount);
+        break;
+      default:
+        WritableUtils.writeVLong(dataOutput, count);
+        break;
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    tag = dataInput.readByte();
+    salt = -1;
+    if ((tag & SALTED) != 0) {
+      tag &= ~SALTED;
+      salt = WritableUtils.readVInt(dataInput);
+    }
+    switch (tag) {
+      case LEXEME_COUNT:
+      case FEATURE_COUNT:
+        element.clear();
+        count = WritableUtils.readVLong(dataInput);
+        lexemeCount = 0;
+        break;
+      case FEATURE_PAIR_COUNT:
+        element.readFields(dataInput);
+        count = WritableUtils.readVLong(dataInput);
+        lexemeCount = 0;
+        break;
+      case LEXEME_TRIPLET:
+        element.readFields(dataInput);
+        count = WritableUtils.readVLong(dataInput);
+        lexemeCount = WritableUtils.readVLong(dataInput);
+        break;
+      default:
+        throw new IOException("Unknown count tuple tag: " + tag);
+    }
+  }
+
+  /** Same text as the previous string encoded values: count | <feature,count> | <lexeme,count,count> */
+  @Override
+  public String toString() {
+    switch (tag) {
+      case FEATURE_PAIR_COUNT:
+        return String.format("<%s,%d>", element.toString(), count);
+      case LEXEME_TRIPLET:
+        return String.format("<%s,%d,%d>", element.toString(), count, lexemeCount);
+      default:
+        return Long.toString(count);
+    }
+  }
+
+  public byte getTag() {
+    return tag;
+  }
+
+  /** The salt bucket of a hot key tuple, -1 when not salted */
+  public int getSalt() {
+    return salt;
+  }
+
+  /** The feature of a FEATURE_PAIR_COUNT or the lexeme of a LEXEME_TRIPLET */
+  public Text getElement() {
+    return element;
+  }
+
+  /** count(L=lexeme), count(F=feature) or count(F=feature, L=lexeme) according to the tag */
+  public long getCount() {
+    return count;
+  }
+
+  /** count(L=lexeme) of a LEXEME_TRIPLET */
+  public long getLexemeCount() {
+    return lexemeCount;
+  }
+}
@@ -3,4 +3,17 @@ package measures_association;
 public enum CounterTypes {
     LEXEME_COUNTER,
     FEATURE_COUNTER,
+    STEM_CACHE_HITS,
+    STEM_CACHE_MISSES,
+    IN_MAPPER_COMBINE_FLUSHES,
+    DICTIONARY_MISSES,
+    FEATURE_COUNT_RECORDS,
+    FEATURE_COUNT_KEY_BYTES,
+    PRUNED_LEXEMES,
+    PRUNED_FEATURES,
+    PRUNED_PAIRS,
+    ALL_PAIRS_OVERSIZED_FEATURES,
+    LSH_OVERSIZED_BUCKETS,
+    LSH_EXACT_PAIRS,
+    LSH_RECALLED_PAIRS,
 };
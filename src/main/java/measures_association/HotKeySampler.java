@@ -0,0 +1,147 @@
+package measures_association;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import utils.VocabularyDictionary;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Client side sampler of the parse stage output that finds the lexemes and features holding a large
+ * share of the <lexeme, feature> pairs. Every lexeme is a single reduce group of the count stage and
+ * every feature of the measures stage, so the hot ones are salted across several reducers: the stage
+ * mappers replicate their count(L) or count(F) record to every salt bucket and spread the pairs by
+ * the salt carried in the {@link CountTupleWritable}.
+ *
+ * <p>The parse output is sorted by lexeme, so neighbouring records share their lexeme and only the
+ * seeks are independent draws. Each seek lands on a random sync block (a whole compressed block of a
+ * block compressed file), skips a random number of its records and samples a couple of them. With n
+ * seeks the share p of a key is estimated within a standard error of about sqrt(p(1 - p) / n): the
+ * default 4000 seeks estimate the 2.5% hot threshold of 20 reducers within about 0.25%, so only keys
+ * within a few tenths of a percent of the threshold may be salted on one input and not on another.
+ */
+public class HotKeySampler {
+
+  public static final String SAMPLE_SIZE = "hotKeySampleSize"; // 0 disables salting
+  public static final String HOT_LEXEMES = "hotLexemes";
+  public static final String HOT_FEATURES = "hotFeatures";
+  private static final int DEFAULT_SAMPLE_SIZE = 8000;
+  private static final int RECORDS_PER_SEEK = 2;
+
+  private final Map<String, Long> lexemeSamples = new HashMap<>();
+  private final Map<String, Long> featureSamples = new HashMap<>();
+  private long pairSamples;
+
+  /** Samples <lexeme, feature> pairs at random sync points of the parse stage output files */
+  public static HotKeySampler sample(Configuration conf, String parseOutputPath) throws IOException {
+    HotKeySampler sampler = new HotKeySampler();
+    int sampleSize = conf.getInt(SAMPLE_SIZE, DEFAULT_SAMPLE_SIZE);
+    Path files = new Path(String.format("%s/part-r-*", parseOutputPath));
+    FileSystem fs = files.getFileSystem(conf);
+    FileStatus[] statuses = fs.globStatus(files);
+    if (sampleSize <= 0 || statuses == null) return sampler;
+
+    long totalBytes = 0;
+    for (FileStatus status : statuses) {
+      totalBytes += status.getLen();
+    }
+    int seeks = Math.max(1, sampleSize / RECORDS_PER_SEEK);
+    Random random = new Random(0); // The same input is always salted the same way
+    SyntacticKeyWritable key = new SyntacticKeyWritable();
+    LongWritable count = new LongWritable();
+    for (FileStatus status : statuses) {
+      if (status.getLen() == 0) continue;
+      int fileSeeks = (int) Math.ceil((double) seeks * status.getLen() / totalBytes);
+      try (SequenceFile.Reader reader =
+          new SequenceFile.Reader(conf, SequenceFile.Reader.file(status.getPath()))) {
+        int blockRecords = countBlockRecords(reader, key, count);
+        for (int i = 0; i < fileSeeks; ++i) {
+          reader.sync((long) (random.nextDouble() * status.getLen()));
+          if (reader.getPosition() >= status.getLen()) {
+            reader.sync(0); // Past the last sync point, the first block takes the last one's share
+          }
+          int skip = random.nextInt(blockRecords);
+          for (int record = 0; record < skip + RECORDS_PER_SEEK && reader.next(key, count); ++record) {
+            if (record < skip || key.getType() != SyntacticPairWritable.Type.LEXEME_FEATURE) continue;
+            sampler.lexemeSamples.merge(key.getLexeme().toString(), 1L, Long::sum);
+            sampler.featureSamples.merge(key.getFeature(), 1L, Long::sum);
+            ++sampler.pairSamples;
+          }
+        }
+      }
+    }
+    return sampler;
+  }
+
+  /** Returns the records of the first sync block of the file, at least 1 */
+  private static int countBlockRecords(
+      SequenceFile.Reader reader, SyntacticKeyWritable key, LongWritable count) throws IOException {
+    reader.sync(0);
+    int records = 0;
+    while (reader.next(key, count) && (records == 0 || !reader.syncSeen())) {
+      ++records;
+    }
+    return Math.max(1, records);
+  }
+
+  /** Sets the hot lexemes of the count stage job, dictionary is null when encoding is disabled */
+  public void configureLexemes(Job job, VocabularyDictionary dictionary) {
+    configure(job, HOT_LEXEMES, lexemeSamples, dictionary);
+  }
+
+  /** Sets the hot features of the measures stage job, dictionary is null when encoding is disabled */
+  public void configureFeatures(Job job, VocabularyDictionary dictionary) {
+    configure(job, HOT_FEATURES, featureSamples, dictionary);
+  }
+
+  /**
+   * A key is hot when it holds more than half the fair share of a reducer, it gets enough salt
+   * buckets for each of them to hold about half a fair share.
+   * Configuration value: key<TAB>buckets<TAB>key<TAB>buckets...
+   */
+  private void configure(
+      Job job, String name, Map<String, Long> samples, VocabularyDictionary dictionary) {
+    int reducers = job.getNumReduceTasks();
+    if (reducers < 2 || pairSamples == 0) return;
+    double threshold = 1.0 / (2 * reducers);
+    StringBuilder hotKeys = new StringBuilder();
+    int hotKeyCount = 0;
+    Text word = new Text();
+    Text token = new Text();
+    for (Map.Entry<String, Long> sample : samples.entrySet()) {
+      double share = (double) sample.getValue() / pairSamples;
+      if (share < threshold) continue;
+      word.set(sample.getKey());
+      if (dictionary != null && !dictionary.encode(word, token)) continue;
+      int buckets = (int) Math.min(reducers, Math.ceil(share / threshold));
+      hotKeys.append(dictionary != null ? token : word).append('\t').append(buckets).append('\t');
+      ++hotKeyCount;
+    }
+    if (hotKeyCount > 0) {
+      job.getConfiguration().set(name, hotKeys.toString());
+    }
+    System.out.printf("Salting %d hot keys in %s.%n", hotKeyCount, job.getJobName());
+  }
+
+  /** Returns the salt buckets of the hot keys set by the runner, the keys are the partitioned elements */
+  public static Map<Text, Integer> getHotKeys(Configuration conf, String name) {
+    String value = conf.get(name);
+    if (value == null || value.isEmpty()) return Collections.emptyMap();
+    Map<Text, Integer> hotKeys = new HashMap<>();
+    String[] parts = value.split("\t");
+    for (int i = 0; i + 1 < parts.length; i += 2) {
+      hotKeys.put(new Text(parts[i]), Integer.parseInt(parts[i + 1]));
+    }
+    return hotKeys;
+  }
+}
@@ -0,0 +1,69 @@
+package measures_association;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import utils.CachedStemmer;
+import utils.StemmedBiarcParser;
+
+import java.io.IOException;
+
+/**
+ * Corpus ingest stage, tokenizes and stems the biarcs shards once so the parse stage of repeated runs
+ * (other golden standards, pruning thresholds...) reads the legal arcs directly.
+ */
+public class IngestBiarcs {
+
+  /**
+   * Map only, lines without legal arcs are dropped.
+   * Input shape:
+   *    key: <line-id>
+   *    value: <head_word<TAB>syntactic-ngram<TAB>total_count<TAB>counts_by_year> (syntactic-ngram: [<word/pos-tag/dep-label/head-index>]),
+   * Output shape:
+   *    key: <null>
+   *    value: <total_count, [<lexeme, word, dependency>]>
+   */
+  public static class MapperClass
+      extends Mapper<LongWritable, Text, NullWritable, IngestedBiarcWritable> {
+
+    private CachedStemmer stemmer;
+    private StemmedBiarcParser parser;
+    private final IngestedBiarcWritable biarc = new IngestedBiarcWritable();
+    private final Text lexemeText = new Text();
+    private final Text wordText = new Text();
+    private final Text dependencyText = new Text();
+
+    @Override
+    protected void setup(Context context) {
+      stemmer = CachedStemmer.create(context.getConfiguration());
+      parser = new StemmedBiarcParser(stemmer);
+    }
+
+    @Override
+    public void map(LongWritable lineId, Text line, Context context)
+        throws IOException, InterruptedException {
+      if (!parser.parse(line)) return;
+      biarc.reset(parser.getTotalCount());
+      for (int i = 0; i < parser.size(); ++i) {
+        String featureWord = parser.getArcWord(i);
+        if (featureWord == null) continue;
+        String lexeme = parser.getArcLexeme(i);
+        if (lexeme == null) continue;
+        lexemeText.set(lexeme);
+        wordText.set(featureWord);
+        parser.getDependency(i, dependencyText);
+        biarc.addArc(lexemeText, wordText, dependencyText);
+      }
+      if (biarc.size() > 0) {
+        context.write(NullWritable.get(), biarc);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) {
+      context.getCounter(CounterTypes.STEM_CACHE_HITS).increment(stemmer.getHits());
+      context.getCounter(CounterTypes.STEM_CACHE_MISSES).increment(stemmer.getMisses());
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package measures_association;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pre-tokenized biarcs line written by the corpus ingest stage, only the legal arcs are kept.
+ * Serialized shape: <total_count, arc_count, [<lexeme, word, dependency>]> where lexeme and word are
+ * the stemmed lowercase head and dependent words and the counts are vlongs.
+ */
+public class IngestedBiarcWritable implements Writable {
+
+  private long totalCount;
+  private int arcCount;
+  private Text[] lexemes = new Text[0];
+  private Text[] words = new Text[0];
+  private Text[] dependencies = new Text[0];
+
+  /** Starts a new line with no arcs */
+  public void reset(long totalCount) {
+    this.totalCount = totalCount;
+    this.arcCount = 0;
+  }
+
+  public void addArc(Text lexeme, Text word, Text dependency) {
+    ensureCapacity(arcCount + 1);
+    lexemes[arcCount].set(lexeme);
+    words[arcCount].set(word);
+    dependencies[arcCount].set(dependency);
+    ++arcCount;
+  }
+
+  private void ensureCapacity(int arcs) {
+    if (arcs <= lexemes.length) return;
+    int capacity = Math.max(arcs, lexemes.length * 2);
+    int previous = lexemes.length;
+    lexemes = Arrays.copyOf(lexemes, capacity);
+    words = Arrays.copyOf(words, capacity);
+    dependencies = Arrays.copyOf(dependencies, capacity);
+    for (int i = previous; i < capacity; ++i) {
+      lexemes[i] = new Text();
+      words[i] = new Text();
+      dependencies[i] = new Text();
+    }
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    WritableUtils.writeVLong(dataOutput, totalCount);
+    WritableUtils.writeVInt(dataOutput, arcCount);
+    for (int i = 0; i < arcCount; ++i) {
+      lexemes[i].write(dataOutput);
+      words[i].write(dataOutput);
+      dependencies[i].write(dataOutput);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    totalCount = WritableUtils.readVLong(dataInput);
+    arcCount = WritableUtils.readVInt(dataInput);
+    ensureCapacity(arcCount);
+    for (int i = 0; i < arcCount; ++i) {
+      lexemes[i].readFields(dataInput);
+      words[i].readFields(dataInput);
+      dependencies[i].readFields(dataInput);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < arcCount; ++i) {
+      line.append(String.format("<%s,%s/%s> ", lexemes[i], words[i], dependencies[i]));
+    }
+    return line.append(totalCount).toString();
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public int size() {
+    return arcCount;
+  }
+
+  public Text getLexeme(int arc) {
+    return lexemes[arc];
+  }
+
+  public Text getWord(int arc) {
+    return words[arc];
+  }
+
+  public Text getDependency(int arc) {
+    return dependencies[arc];
+  }
+}
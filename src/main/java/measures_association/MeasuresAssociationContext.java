@@ -1,58 +1,98 @@
 package measures_association;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.WritableComparable;
-import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
-import org.apache.hadoop.mapreduce.Reducer;
-import utils.SyntacticTextUtils;
+import utils.ByteKeyCountTable;
+import utils.ProfilingReducer;
+import utils.VocabularyDictionary;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
 
 public class MeasuresAssociationContext {
 
     /**
      * Input shape:
      *    key: <<FEATURE, feature> | <LEXEME_FEATURE, feature>>
-     *    value: <count(F=feature) | <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>
-     * Output shape:
+     *    value: <<FEATURE_COUNT, count(F=feature)> | <LEXEME_TRIPLET, lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>
+     * Output shape (the triplets of a hot feature are salted by their lexeme and its count is replicated to every salt bucket):
      *    key: <<FEATURE, feature> | <LEXEME_FEATURE, feature>>
-     *    value: <<'F', count(F=feature)> | <'LF', <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>>
+     *    value: <<FEATURE_COUNT, count(F=feature)> | <LEXEME_TRIPLET, lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>
      */
     public static class MapperClass
-            extends Mapper<SyntacticPairWritable, Text, SyntacticPairWritable, TextPairWritable> {
+            extends Mapper<SyntacticPairWritable, CountTupleWritable, SyntacticPairWritable, CountTupleWritable> {
+
+        private Map<Text, Integer> hotFeatures; // feature -> salt buckets
+
+        @Override
+        protected void setup(Context context) {
+            hotFeatures = HotKeySampler.getHotKeys(context.getConfiguration(), HotKeySampler.HOT_FEATURES);
+        }
 
         @Override
-        public void map(SyntacticPairWritable feature, Text featureInfo, Context context)
+        public void map(SyntacticPairWritable feature, CountTupleWritable featureInfo, Context context)
                 throws IOException, InterruptedException {
-            context.write(feature,
-                    new TextPairWritable(
-                            feature.getType() == SyntacticPairWritable.Type.FEATURE ? "F" : "LF",
-                            featureInfo));
+            Integer buckets = hotFeatures.isEmpty() ? null : hotFeatures.get(feature.getElement());
+            if (buckets == null) {
+                context.write(feature, featureInfo); // The values are already tagged by the count stage
+            } else if (featureInfo.getTag() == CountTupleWritable.LEXEME_TRIPLET) {
+                featureInfo.setSalt((featureInfo.getElement().hashCode() & Integer.MAX_VALUE) % buckets);
+                context.write(feature, featureInfo);
+            } else {
+                for (int salt = 0; salt < buckets; ++salt) { // Every salt bucket of a hot feature needs its count
+                    featureInfo.setSalt(salt);
+                    context.write(feature, featureInfo);
+                }
+            }
         }
     }
 
-    /**
-     * Input shape:
-     *    key: <<FEATURE, feature> | <LEXEME_FEATURE, feature>>
-     *    value: <<'F', count(F=feature)> | <'LF', <lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>>
-     * Output shape:
-     *    key: <lexeme>
-     *    value: <<lexeme, feature, plain-frequency, relative-frequency, pmi, t-test>>
-     */
-    public static class ReducerClass
-            extends Reducer<SyntacticPairWritable, TextPairWritable, Text, AssociationMeasuresWritable> {
+    /** Calculates the measures of association of <lexeme, feature> pairs for both the shuffle and broadcast joins */
+    static class MeasuresCalculator {
+
+        private final long totalLexemeCounter; // count(L)
+        private final long totalFeatureCounter; // count(F)
+
+        // Lexeme and feature dictionaries, null when dictionary encoding is disabled
+        private VocabularyDictionary lexemes;
+        private VocabularyDictionary features;
+        private final Text word = new Text();
+        private final int measuresFormat; // The lexeme is the output key
+
+        MeasuresCalculator(Configuration conf) throws IOException {
+            totalLexemeCounter = conf.getLong("countL", 0);
+            totalFeatureCounter = conf.getLong("countF", 0);
+            measuresFormat = AssociationMeasuresWritable.getFormat(conf, true);
+            if (conf.getBoolean(VocabularyDictionary.ENABLED, false)) {
+                lexemes = VocabularyDictionary.load(conf, VocabularyDictionary.LEXEMES);
+                features = VocabularyDictionary.load(conf, VocabularyDictionary.FEATURES);
+            }
+        }
 
-        private long totalLexemeCounter; // count(L)
-        private long totalFeatureCounter; // count(F)
+        String decodeLexeme(Text element) throws IOException {
+            return decode(lexemes, element);
+        }
 
-        protected void setup(Context context) {
-            totalLexemeCounter = context.getConfiguration().getLong("countL", 0);
-            totalFeatureCounter = context.getConfiguration().getLong("countF", 0);
+        String decodeFeature(Text element) throws IOException {
+            return decode(features, element);
+        }
+
+        /** Returns the word of a dictionary token, the element itself if encoding is disabled */
+        private String decode(VocabularyDictionary dictionary, Text element) throws IOException {
+            if (dictionary == null) return element.toString();
+            if (!dictionary.decode(element, word)) {
+                throw new IOException("Unknown dictionary token: " + element);
+            }
+            return word.toString();
         }
 
-        private AssociationMeasuresWritable calculateAssociationMeasures(String lexeme, String feature, long countLexemeFeature, long countLexeme, long currentFeatureCount) {
+        AssociationMeasuresWritable calculateAssociationMeasures(String lexeme, String feature, long countLexemeFeature, long countLexeme, long currentFeatureCount) {
             // count(L=lexeme, F=feature)
           long plainFrequency = countLexemeFeature;
             // P(feature|lexeme) = count(L=lexeme, F=feature) / count(L=lexeme)
@@ -70,63 +110,129 @@ public class MeasuresAssociationContext {
             // t-test statistic = (P(lexeme, feature) - (P(L=lexeme) * P(F=feature))) / sqrt(P(L=lexeme) * P(F=feature))
           double tTest = ((jointProbability - (lexemeProbability * featureProbability)) / Math.sqrt((lexemeProbability * featureProbability)));
 
-          return new AssociationMeasuresWritable(lexeme, feature, plainFrequency, relativeFrequency, pmi, tTest);
+          AssociationMeasuresWritable measures = new AssociationMeasuresWritable(lexeme, feature, plainFrequency, relativeFrequency, pmi, tTest);
+          measures.setFormat(measuresFormat);
+          return measures;
+        }
+    }
+
+    /**
+     * Input shape:
+     *    key: <<FEATURE, feature> | <LEXEME_FEATURE, feature>>
+     *    value: <<FEATURE_COUNT, count(F=feature)> | <LEXEME_TRIPLET, lexeme, count(F=feature, L=lexeme), count(L=lexeme)>>
+     * Dictionary tokens are decoded back to the lexeme and feature words.
+     * Output shape:
+     *    key: <lexeme>
+     *    value: <<lexeme, feature, plain-frequency, relative-frequency, pmi, t-test>>
+     */
+    public static class ReducerClass
+            extends ProfilingReducer<SyntacticPairWritable, CountTupleWritable, Text, AssociationMeasuresWritable> {
+
+        private MeasuresCalculator calculator;
+
+        protected void setup(Context context) throws IOException {
+            calculator = new MeasuresCalculator(context.getConfiguration());
         }
 
         @Override
         public void reduce(
-                SyntacticPairWritable feature, Iterable<TextPairWritable> featureInfo, Context context) throws IOException, InterruptedException {
+                SyntacticPairWritable feature, Iterable<CountTupleWritable> featureInfo, Context context) throws IOException, InterruptedException {
             Long currentFeatureCount = null; // count(F=feature)
-            for (TextPairWritable info : featureInfo) {
-                String tag = info.getFirst().toString();
-                if(tag.equals("F")) {
-                  currentFeatureCount = Long.parseLong(info.getSecond().toString());
-                }
-                else if(currentFeatureCount != null) {
-                  String[] triplet = SyntacticTextUtils.splitPairTriplet(info.getSecond());
-                  String lexeme = triplet[0];
-                  long countLexemeFeature = Long.parseLong(triplet[1]);
-                  long countLexeme = Long.parseLong(triplet[2]);
-                  context.write(new Text(lexeme), calculateAssociationMeasures(lexeme, feature.getElement().toString(), countLexemeFeature, countLexeme, currentFeatureCount));
+            String featureElement = null;
+            for (CountTupleWritable info : featureInfo) {
+                switch (info.getTag()) {
+                  case CountTupleWritable.FEATURE_COUNT:
+                    currentFeatureCount = info.getCount();
+                    break;
+                  case CountTupleWritable.LEXEME_TRIPLET:
+                    if (currentFeatureCount == null) { // The feature was pruned by the parse stage
+                      context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+                      break;
+                    }
+                    String lexeme = calculator.decodeLexeme(info.getElement());
+                    if (featureElement == null) {
+                      featureElement = calculator.decodeFeature(feature.getElement());
+                    }
+                    context.write(new Text(lexeme), calculator.calculateAssociationMeasures(lexeme, featureElement, info.getCount(), info.getLexemeCount(), currentFeatureCount));
+                    break;
                 }
             }
         }
     }
 
-    public static class PartitionerClass extends Partitioner<SyntacticPairWritable, TextPairWritable> {
+    /**
+     * Map only broadcast join, used instead of the shuffle join when the feature counts of the count stage
+     * are small enough to be shipped to every task through the distributed cache.
+     * Input shape:
+     *    key: <LEXEME_FEATURE, feature>
+     *    value: <LEXEME_TRIPLET, lexeme, count(F=feature, L=lexeme), count(L=lexeme)>
+     * Output shape:
+     *    key: <lexeme>
+     *    value: <<lexeme, feature, plain-frequency, relative-frequency, pmi, t-test>>
+     */
+    public static class BroadcastMapperClass
+            extends Mapper<SyntacticPairWritable, CountTupleWritable, Text, AssociationMeasuresWritable> {
+
+        private MeasuresCalculator calculator;
+        private final ByteKeyCountTable featureCounts = new ByteKeyCountTable(); // feature -> count(F=feature)
 
-        /** <LEXEME_FEATURE, feature> and <FEATURE, feature> will arrive to same reducer */
         @Override
-        public int getPartition(SyntacticPairWritable key, TextPairWritable value, int numPartitions) {
-            return (key.getElement().hashCode() & 0xFFFFFFF) % numPartitions;
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            calculator = new MeasuresCalculator(conf);
+            URI[] cacheFiles = context.getCacheFiles();
+            if (cacheFiles == null) return;
+            for (URI cacheFile : cacheFiles) {
+                String localName = cacheFile.getFragment();
+                if (localName != null && localName.startsWith(CountLexemeFeatures.FEATURE_COUNTS)) {
+                    loadFeatureCounts(conf, localName);
+                }
+            }
         }
-    }
 
-    /** Sort the keys so that <FEATURE> tags will arrive before <LEXEME_FEATURE> tag for every equal feature */
-    public static class MeasuresAssociationContextComparator extends WritableComparator {
-
-        protected MeasuresAssociationContextComparator() {
-            super(SyntacticPairWritable.class, true);
+        private void loadFeatureCounts(Configuration conf, String localName) throws IOException {
+            Path path = FileSystem.getLocal(conf).makeQualified(new Path(localName));
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path))) {
+                SyntacticPairWritable feature = new SyntacticPairWritable();
+                CountTupleWritable featureCount = new CountTupleWritable();
+                while (reader.next(feature, featureCount)) {
+                    Text element = feature.getElement();
+                    featureCounts.add(element.getBytes(), 0, element.getLength(), featureCount.getCount());
+                }
+            }
         }
 
         @Override
-        public int compare(WritableComparable w1, WritableComparable w2) {
-            SyntacticPairWritable a = (SyntacticPairWritable) w1;
-            SyntacticPairWritable b = (SyntacticPairWritable) w2;
-            return a.compareTo(b);
+        public void map(SyntacticPairWritable feature, CountTupleWritable info, Context context)
+                throws IOException, InterruptedException {
+            if (info.getTag() != CountTupleWritable.LEXEME_TRIPLET) return;
+            Text element = feature.getElement();
+            long featureCount = featureCounts.get(element.getBytes(), 0, element.getLength()); // count(F=feature)
+            if (featureCount < 0) { // The feature was pruned by the parse stage
+                context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+                return;
+            }
+            String lexeme = calculator.decodeLexeme(info.getElement());
+            String featureElement = calculator.decodeFeature(element);
+            context.write(new Text(lexeme), calculator.calculateAssociationMeasures(lexeme, featureElement, info.getCount(), info.getLexemeCount(), featureCount));
         }
     }
 
-    public static class MeasuresAssociationContextGroupingComparator extends WritableComparator {
-        protected MeasuresAssociationContextGroupingComparator() {
-            super(SyntacticPairWritable.class, true);
-        }
+    public static class PartitionerClass extends Partitioner<SyntacticPairWritable, CountTupleWritable> {
 
+        /**
+         * <LEXEME_FEATURE, feature> and <FEATURE, feature> will arrive to same reducer,
+         * a hot feature is spread over the next reducers by the salt of its tuples
+         */
         @Override
-        public int compare(WritableComparable w1, WritableComparable w2) {
-            SyntacticPairWritable a = (SyntacticPairWritable) w1;
-            SyntacticPairWritable b = (SyntacticPairWritable) w2;
-            return a.getElement().toString().compareTo(b.getElement().toString());
+        public int getPartition(SyntacticPairWritable key, CountTupleWritable value, int numPartitions) {
+            int partition = key.getElement().hashCode() & 0xFFFFFFF;
+            return (value.getSalt() < 0 ? partition : partition + value.getSalt()) % numPartitions;
         }
     }
+
+    /** Sort the keys so that <FEATURE> tags will arrive before <LEXEME_FEATURE> tag for every equal feature */
+    public static class MeasuresAssociationContextComparator extends SyntacticPairWritable.Comparator {}
+
+    public static class MeasuresAssociationContextGroupingComparator extends SyntacticPairWritable.ElementComparator {}
 }
@@ -1,19 +1,39 @@
 package measures_association;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import utils.ByteKeyCountTable;
+import utils.CombinedInput;
+import utils.GoldenStandard;
+import utils.StageManifest;
+import utils.RunReport;
+import utils.StageProfiler;
+import utils.VocabularyDictionary;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
 import java.util.stream.IntStream;
 
 public class MeasuresAssociationRunner {
@@ -21,52 +41,122 @@ public class MeasuresAssociationRunner {
   private static String outputBucketPath;
   private static String goldenStandardPath;
   private static int corpusFileCount;
+  private static int firstCorpusFile; // Only set while creating the incremental delta parse job
   private static final String LOG_PATH = "/log-files/";
+  private static final RunReport runReport = new RunReport("Measures Association"); // Job level metrics of every stage
+  // Largest estimated heap of the feature counts table each measures task loads instead of a shuffle
+  public static final String BROADCAST_JOIN_MAX_HEAP_MB = "broadcastJoinMaxHeapMB";
+  private static final long DEFAULT_BROADCAST_JOIN_MAX_HEAP_MB = 64;
+  // Pre-tokenized corpus written by the ingest stage once and read by the parse stage of later runs
+  public static final String INGESTED_CORPUS_PATH = "ingestedCorpusPath";
+  // Parse only the corpus files added since the stored parse output and merge their counts into it
+  public static final String INCREMENTAL = "incremental";
+  private static final String CORPUS_FILE_COUNT = "corpusFileCount";
+  private static final String INPUT_CORPUS_PATH = "inputCorpusPath";
+  private static Configuration baseConfiguration; // Holds the generic -D options passed to the runner
 
   private static long totalLexemeCount;
   private static long totalFeatureCount;
 
   public static void main(String[] args) throws IOException {
+    baseConfiguration = new Configuration();
+    args = new GenericOptionsParser(baseConfiguration, args).getRemainingArgs();
 
     if (args.length < 3) {
       System.err.println(
-          "Wrong argument count received.\nExpected <input-corpus-path> <output-s3-path> <corpus-files-count>.");
+          "Wrong argument count received.\nExpected <input-corpus-path> <output-s3-path> <corpus-files-count> [<golden-standard-path>].");
       System.exit(1);
     }
     inputCorpusPath = args[0];
     outputBucketPath = args[1];
     corpusFileCount = Integer.parseInt(args[2]);
+    goldenStandardPath = args.length > 3 ? args[3] : null; // Enables the golden standard filter
+
+    // Ingest Biarcs Corpus (optional, skipped when the ingested corpus holds the same corpus files,
+    // otherwise its new output files make the parse stage stale as well)
+    String ingestedCorpusPath = baseConfiguration.get(INGESTED_CORPUS_PATH);
+    if (ingestedCorpusPath != null) {
+      Configuration ingestBiarcs = new Configuration(baseConfiguration);
+      final Job biarcsIngest = Job.getInstance(ingestBiarcs, "Ingest Biarcs Corpus");
+      createIngestBiarcsJob(biarcsIngest, inputCorpusPath, ingestedCorpusPath);
+      runStage(
+          biarcsIngest, ingestedCorpusPath, createIngestManifest(biarcsIngest, ingestedCorpusPath));
+    }
 
     // Parse Syntactic Dependencies
-    Configuration parseSyntacticDependencies = new Configuration();
+    Configuration parseSyntacticDependencies = new Configuration(baseConfiguration);
     final Job syntacticDependencies =
         Job.getInstance(parseSyntacticDependencies, "Parse Syntactic Dependencies");
     String syntacticDependenciesPath =
-        createSyntacticDependenciesJob(syntacticDependencies, inputCorpusPath);
-    waitForJobCompletion(syntacticDependencies, syntacticDependenciesPath);
+        createSyntacticDependenciesJob(syntacticDependencies, inputCorpusPath, ingestedCorpusPath);
+    Properties storedCounts =
+        baseConfiguration.getBoolean(INCREMENTAL, false)
+            ? StageManifest.read(baseConfiguration, syntacticDependenciesPath)
+            : null;
+    StageManifest syntacticDependenciesManifest =
+        canMergeNewCorpusFiles(storedCounts)
+            ? mergeNewCorpusFiles(syntacticDependencies, syntacticDependenciesPath, storedCounts)
+            : runStage(
+                syntacticDependencies,
+                syntacticDependenciesPath,
+                createSyntacticDependenciesManifest(syntacticDependencies, syntacticDependenciesPath),
+                CounterTypes.LEXEME_COUNTER,
+                CounterTypes.FEATURE_COUNTER);
+
+    totalLexemeCount = syntacticDependenciesManifest.getCounter(CounterTypes.LEXEME_COUNTER); // count(L)
+    totalFeatureCount = syntacticDependenciesManifest.getCounter(CounterTypes.FEATURE_COUNTER); // count(F)
 
-    Counters counters = syntacticDependencies.getCounters();
-    totalLexemeCount = counters.findCounter(CounterTypes.LEXEME_COUNTER).getValue(); // count(L)
-    totalFeatureCount = counters.findCounter(CounterTypes.FEATURE_COUNTER).getValue(); // count(F)
+    // Build Vocabulary Dictionary (optional, replaces the lexemes and features by short ids)
+    String vocabularyDictionaryPath = null;
+    if (baseConfiguration.getBoolean(VocabularyDictionary.ENABLED, false)) {
+      Configuration buildVocabularyDictionary = new Configuration(baseConfiguration);
+      final Job vocabularyDictionary =
+          Job.getInstance(buildVocabularyDictionary, "Build Vocabulary Dictionary");
+      vocabularyDictionaryPath =
+          createVocabularyDictionaryJob(vocabularyDictionary, syntacticDependenciesPath);
+      runStage(vocabularyDictionary, vocabularyDictionaryPath);
+    }
+
+    // Sample the hot lexemes and features, salted across several reducers of the next stages
+    HotKeySampler hotKeys = HotKeySampler.sample(baseConfiguration, syntacticDependenciesPath);
+    VocabularyDictionary lexemeDictionary =
+        loadVocabularyDictionary(vocabularyDictionaryPath, VocabularyDictionary.LEXEMES);
+    VocabularyDictionary featureDictionary =
+        loadVocabularyDictionary(vocabularyDictionaryPath, VocabularyDictionary.FEATURES);
 
     // Order And Count Lexeme Feature
-    Configuration orderAndCountLexemeFeatures = new Configuration();
+    Configuration orderAndCountLexemeFeatures = new Configuration(baseConfiguration);
     final Job lexemeFeaturesCount =
         Job.getInstance(orderAndCountLexemeFeatures, "Order And Count Lexeme Feature");
+    addVocabularyDictionary(lexemeFeaturesCount, vocabularyDictionaryPath);
+    hotKeys.configureLexemes(lexemeFeaturesCount, lexemeDictionary);
     String lexemeFeaturesCountPath =
         createOrderAndCountLexemeFeatureJob(lexemeFeaturesCount, syntacticDependenciesPath);
-    waitForJobCompletion(lexemeFeaturesCount, lexemeFeaturesCountPath);
+    StageManifest lexemeFeaturesCountManifest =
+        runStage(
+            lexemeFeaturesCount,
+            lexemeFeaturesCountPath,
+            CounterTypes.FEATURE_COUNT_RECORDS,
+            CounterTypes.FEATURE_COUNT_KEY_BYTES);
 
     // Calculate Measures of association with context
-    Configuration calculateAssociationWithContext = new Configuration();
+    Configuration calculateAssociationWithContext = new Configuration(baseConfiguration);
     calculateAssociationWithContext.setLong("countL", totalLexemeCount);
     calculateAssociationWithContext.setLong("countF", totalFeatureCount);
     final Job associationWithContext =
         Job.getInstance(
             calculateAssociationWithContext, "Calculate Measures Of Association With Context");
-    String associationWithContextPath =
-        createMeasuresOfAssocationJob(associationWithContext, lexemeFeaturesCountPath);
-    waitForJobCompletion(associationWithContext, associationWithContextPath);
+    addVocabularyDictionary(associationWithContext, vocabularyDictionaryPath);
+    String associationWithContextPath;
+    if (useBroadcastJoin(lexemeFeaturesCountPath, lexemeFeaturesCountManifest)) {
+      associationWithContextPath =
+          createBroadcastMeasuresOfAssociationJob(associationWithContext, lexemeFeaturesCountPath);
+    } else {
+      hotKeys.configureFeatures(associationWithContext, featureDictionary);
+      associationWithContextPath =
+          createMeasuresOfAssocationJob(associationWithContext, lexemeFeaturesCountPath);
+    }
+    runStage(associationWithContext, associationWithContextPath);
 
 
     System.out.printf(
@@ -79,7 +169,7 @@ public class MeasuresAssociationRunner {
     if (inputPath != null) {
       FileInputFormat.addInputPath(job, new Path(inputPath));
     }
-    job.setInputFormatClass(SequenceFileInputFormat.class);
+    CombinedInput.setCombinedInput(job);
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
     SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
     SequenceFileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
@@ -92,7 +182,7 @@ public class MeasuresAssociationRunner {
   }
 
   private static String setCorpusInputOutput(Job job, String inputPath) throws IOException {
-    IntStream.range(0, corpusFileCount)
+    IntStream.range(firstCorpusFile, corpusFileCount)
         .forEach(
             i -> {
               try {
@@ -105,18 +195,253 @@ public class MeasuresAssociationRunner {
     return setInputOutput(job, null, false);
   }
 
-  private static String createSyntacticDependenciesJob(Job job, String filePath)
+  /**
+   * The ingested corpus only depends on the corpus files, its manifest records their path and
+   * count without the configuration so other pruning or golden standard settings keep using it
+   */
+  private static StageManifest createIngestManifest(Job job, String ingestedCorpusPath)
       throws IOException {
+    Map<String, String> corpusFiles = new HashMap<>();
+    corpusFiles.put(INPUT_CORPUS_PATH, inputCorpusPath);
+    corpusFiles.put(CORPUS_FILE_COUNT, Integer.toString(corpusFileCount));
+    return new StageManifest(job, ingestedCorpusPath, corpusFiles, false);
+  }
+
+  private static void createIngestBiarcsJob(Job job, String filePath, String ingestedCorpusPath)
+      throws IOException {
+    job.setJarByClass(IngestBiarcs.class);
+    job.setMapperClass(IngestBiarcs.MapperClass.class);
+    job.setNumReduceTasks(0);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(IngestedBiarcWritable.class);
+    setCorpusInputOutput(job, filePath);
+    FileOutputFormat.setOutputPath(job, new Path(ingestedCorpusPath)); // Kept across runs
+  }
+
+  /** Parses the raw corpus shards, or the ingested corpus when its path is not null */
+  private static String createSyntacticDependenciesJob(
+      Job job, String filePath, String ingestedCorpusPath) throws IOException {
     job.setJarByClass(ParseSyntacticDependencies.class);
-    job.setMapperClass(ParseSyntacticDependencies.MapperClass.class);
+    job.setMapperClass(
+        ingestedCorpusPath != null
+            ? ParseSyntacticDependencies.IngestedMapperClass.class
+            : ParseSyntacticDependencies.MapperClass.class);
     job.setPartitionerClass(ParseSyntacticDependencies.PartitionerClass.class);
-    job.setCombinerClass(ParseSyntacticDependencies.ReducerClass.class);
-    job.setReducerClass(ParseSyntacticDependencies.ReducerClass.class);
-    job.setMapOutputKeyClass(Text.class);
+    job.setCombinerClass(ParseSyntacticDependencies.CombinerClass.class);
+    // Pruned counts can not be merged with later deltas, incremental mode keeps every count
+    job.setReducerClass(
+        baseConfiguration.getBoolean(INCREMENTAL, false)
+            ? ParseSyntacticDependencies.CombinerClass.class
+            : ParseSyntacticDependencies.ReducerClass.class);
+    job.setMapOutputKeyClass(SyntacticKeyWritable.class);
     job.setMapOutputValueClass(LongWritable.class);
-    job.setOutputKeyClass(Text.class);
+    job.setOutputKeyClass(SyntacticKeyWritable.class);
+    job.setOutputValueClass(LongWritable.class);
+    if (goldenStandardPath != null) {
+      job.getConfiguration()
+          .setBoolean(ParseSyntacticDependencies.ArcCountsMapper.GOLDEN_STANDARD_FILTER, true);
+      addCacheFile(job, new Path(goldenStandardPath), GoldenStandard.LOCAL_NAME);
+    }
+    return ingestedCorpusPath != null
+        ? setInputOutput(job, ingestedCorpusPath, false)
+        : setCorpusInputOutput(job, filePath);
+  }
+
+  private static String createMergeSyntacticDependenciesJob(
+      Job job, String storedPath, String deltaPath) throws IOException {
+    job.setJarByClass(ParseSyntacticDependencies.class);
+    job.setMapperClass(Mapper.class); // Identity, the counts are summed by key
+    job.setPartitionerClass(ParseSyntacticDependencies.PartitionerClass.class);
+    job.setCombinerClass(ParseSyntacticDependencies.CombinerClass.class);
+    job.setReducerClass(ParseSyntacticDependencies.CombinerClass.class);
+    job.setMapOutputKeyClass(SyntacticKeyWritable.class);
+    job.setMapOutputValueClass(LongWritable.class);
+    job.setOutputKeyClass(SyntacticKeyWritable.class);
     job.setOutputValueClass(LongWritable.class);
-    return setCorpusInputOutput(job, filePath);
+    FileInputFormat.addInputPath(job, new Path(deltaPath));
+    return setInputOutput(job, storedPath, false);
+  }
+
+  /**
+   * The parse stage manifest also records what the stored counts were parsed with, so the counts of
+   * new corpus files are only merged into counts of the same corpus, filter and pruning
+   */
+  private static StageManifest createSyntacticDependenciesManifest(Job job, String outputPath)
+      throws IOException {
+    return new StageManifest(job, outputPath, getSyntacticDependenciesValues());
+  }
+
+  private static Map<String, String> getSyntacticDependenciesValues() {
+    Map<String, String> values = new HashMap<>();
+    values.put(CORPUS_FILE_COUNT, Integer.toString(corpusFileCount));
+    values.put(INPUT_CORPUS_PATH, inputCorpusPath);
+    values.put(INCREMENTAL, Boolean.toString(baseConfiguration.getBoolean(INCREMENTAL, false)));
+    values.put(
+        ParseSyntacticDependencies.ArcCountsMapper.GOLDEN_STANDARD_FILTER,
+        goldenStandardPath != null ? goldenStandardPath : "");
+    for (String minCount :
+        new String[] {
+          ParseSyntacticDependencies.ReducerClass.MIN_LEXEME_COUNT,
+          ParseSyntacticDependencies.ReducerClass.MIN_FEATURE_COUNT,
+          ParseSyntacticDependencies.ReducerClass.MIN_PAIR_COUNT
+        }) {
+      values.put(minCount, Long.toString(baseConfiguration.getLong(minCount, 1)));
+    }
+    return values;
+  }
+
+  /**
+   * Returns true if the stored counts cover fewer corpus files and were parsed in incremental mode
+   * with the same corpus, filter and pruning, otherwise the parse stage runs over all the files
+   */
+  private static boolean canMergeNewCorpusFiles(Properties storedCounts) {
+    if (storedCounts == null) return false;
+    String storedFileCount = StageManifest.getValue(storedCounts, CORPUS_FILE_COUNT);
+    if (storedFileCount == null || Integer.parseInt(storedFileCount) >= corpusFileCount) return false;
+    for (Map.Entry<String, String> value : getSyntacticDependenciesValues().entrySet()) {
+      if (!value.getKey().equals(CORPUS_FILE_COUNT)
+          && !value.getValue().equals(StageManifest.getValue(storedCounts, value.getKey()))) {
+        System.out.printf(
+            "Stored counts were parsed with %s=%s, parsing all corpus files.%n",
+            value.getKey(), StageManifest.getValue(storedCounts, value.getKey()));
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Incremental mode: parses only the corpus files added since the stored parse output, merges their
+   * count deltas into it and stores its manifest as if all the corpus files were parsed, so the
+   * following stages recompute from the merged counts
+   */
+  private static StageManifest mergeNewCorpusFiles(
+      Job syntacticDependencies, String storedPath, Properties storedCounts) throws IOException {
+    int storedFileCount = Integer.parseInt(StageManifest.getValue(storedCounts, CORPUS_FILE_COUNT));
+    System.out.printf(
+        "Stored counts cover %d corpus files, parsing %d new files.%n",
+        storedFileCount, corpusFileCount - storedFileCount);
+    FileSystem fs = new Path(storedPath).getFileSystem(baseConfiguration);
+
+    // Parse Syntactic Dependencies Delta (the new corpus files only)
+    Configuration parseDelta = new Configuration(baseConfiguration);
+    final Job delta = Job.getInstance(parseDelta, "Parse Syntactic Dependencies Delta");
+    firstCorpusFile = storedFileCount;
+    String deltaPath = createSyntacticDependenciesJob(delta, inputCorpusPath, null);
+    firstCorpusFile = 0;
+    fs.delete(new Path(deltaPath), true); // Leftovers of an interrupted incremental run
+    waitForJobCompletion(delta, deltaPath);
+
+    // Merge Syntactic Dependencies (stored counts and delta counts)
+    Configuration mergeCounts = new Configuration(baseConfiguration);
+    final Job merge = Job.getInstance(mergeCounts, "Merge Syntactic Dependencies");
+    String mergePath = createMergeSyntacticDependenciesJob(merge, storedPath, deltaPath);
+    fs.delete(new Path(mergePath), true);
+    waitForJobCompletion(merge, mergePath);
+
+    // The merged counts replace the stored counts
+    fs.delete(new Path(storedPath), true);
+    if (!fs.rename(new Path(mergePath), new Path(storedPath))) {
+      System.err.printf("Failed moving the merged counts %s to %s.%n", mergePath, storedPath);
+      System.exit(1);
+    }
+    fs.delete(new Path(deltaPath), true);
+
+    Counters deltaCounters = delta.getCounters();
+    Map<Enum<?>, Long> counters = new HashMap<>();
+    for (CounterTypes counter :
+        new CounterTypes[] {CounterTypes.LEXEME_COUNTER, CounterTypes.FEATURE_COUNTER}) {
+      counters.put(
+          counter,
+          StageManifest.getCounter(storedCounts, counter)
+              + deltaCounters.findCounter(counter).getValue());
+    }
+    StageManifest manifest = createSyntacticDependenciesManifest(syntacticDependencies, storedPath);
+    manifest.store(counters);
+    return manifest;
+  }
+
+  private static String createVocabularyDictionaryJob(Job job, String filePath)
+      throws IOException {
+    job.setJarByClass(BuildVocabularyDictionary.class);
+    job.setMapperClass(BuildVocabularyDictionary.MapperClass.class);
+    job.setReducerClass(BuildVocabularyDictionary.ReducerClass.class);
+    job.setSortComparatorClass(LongWritable.DecreasingComparator.class);
+    job.setNumReduceTasks(1); // Ids are assigned in a single global count order
+    job.setMapOutputKeyClass(LongWritable.class);
+    job.setMapOutputValueClass(SyntacticPairWritable.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(IntWritable.class);
+    String outputPath = setInputOutput(job, filePath, false);
+    LazyOutputFormat.setOutputFormatClass(job, SequenceFileOutputFormat.class);
+    MultipleOutputs.addNamedOutput(
+        job, VocabularyDictionary.LEXEMES, SequenceFileOutputFormat.class, Text.class, IntWritable.class);
+    MultipleOutputs.addNamedOutput(
+        job, VocabularyDictionary.FEATURES, SequenceFileOutputFormat.class, Text.class, IntWritable.class);
+    return outputPath;
+  }
+
+  private static void addVocabularyDictionary(Job job, String dictionaryPath) {
+    if (dictionaryPath == null) return;
+    job.getConfiguration().setBoolean(VocabularyDictionary.ENABLED, true);
+    for (String name : new String[] {VocabularyDictionary.LEXEMES, VocabularyDictionary.FEATURES}) {
+      // Symlinked by the named output name in the task working directory
+      addCacheFile(job, new Path(String.format("%s/%s-r-00000", dictionaryPath, name)), name);
+    }
+  }
+
+  /** Loads a dictionary on the client to encode the hot keys, null when dictionary encoding is disabled */
+  private static VocabularyDictionary loadVocabularyDictionary(String dictionaryPath, String name)
+      throws IOException {
+    if (dictionaryPath == null) return null;
+    return VocabularyDictionary.load(
+        baseConfiguration, new Path(String.format("%s/%s-r-00000", dictionaryPath, name)));
+  }
+
+  private static void addCacheFile(Job job, Path path, String localName) {
+    URI file = path.toUri();
+    try {
+      job.addCacheFile(new URI(file.getScheme(), file.getAuthority(), file.getPath(), null, localName));
+    } catch (URISyntaxException e) {
+      System.err.printf("Invalid cache file path %s: %s%n", file, e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static FileStatus[] getFeatureCountFiles(String lexemeFeaturesCountPath) throws IOException {
+    Path featureCounts =
+        new Path(String.format("%s/%s-r-*", lexemeFeaturesCountPath, CountLexemeFeatures.FEATURE_COUNTS));
+    FileStatus[] files = featureCounts.getFileSystem(baseConfiguration).globStatus(featureCounts);
+    return files != null ? files : new FileStatus[0];
+  }
+
+  /**
+   * Broadcast join the feature counts when the table each measures task loads is estimated below the
+   * broadcastJoinMaxHeapMB limit. The estimate is taken from the uncompressed record count and key
+   * bytes the count stage counted, the compressed output is several times smaller than the table.
+   */
+  private static boolean useBroadcastJoin(String lexemeFeaturesCountPath, StageManifest countManifest)
+      throws IOException {
+    long maxBytes =
+        baseConfiguration.getLong(BROADCAST_JOIN_MAX_HEAP_MB, DEFAULT_BROADCAST_JOIN_MAX_HEAP_MB) << 20;
+    long records = countManifest.getCounter(CounterTypes.FEATURE_COUNT_RECORDS);
+    long keyBytes = countManifest.getCounter(CounterTypes.FEATURE_COUNT_KEY_BYTES);
+    long featureCountsBytes = 0;
+    for (FileStatus file : getFeatureCountFiles(lexemeFeaturesCountPath)) {
+      featureCountsBytes += file.getLen();
+    }
+    if (records == 0 && featureCountsBytes > 0) { // Counted by a run before the counters existed
+      System.out.printf(
+          "Feature counts output is %d bytes without a record count, using shuffle join.%n",
+          featureCountsBytes);
+      return false;
+    }
+    long heapBytes = ByteKeyCountTable.estimateMemoryBytes(records, keyBytes);
+    boolean broadcast = heapBytes <= maxBytes;
+    System.out.printf(
+        "Feature counts hold %d features of %d key bytes, an estimated %.2f MB broadcast table of at most %d MB, using %s join.%n",
+        records, keyBytes, heapBytes / (double) (1 << 20), maxBytes >> 20, broadcast ? "broadcast" : "shuffle");
+    return broadcast;
   }
 
   private static String createOrderAndCountLexemeFeatureJob(Job job, String filePath)
@@ -128,9 +453,15 @@ public class MeasuresAssociationRunner {
     job.setSortComparatorClass(CountLexemeFeatures.CountLexemeFeaturesComparator.class);
     job.setGroupingComparatorClass(CountLexemeFeatures.CountLexemeFeaturesGroupingComparator.class);
     job.setMapOutputKeyClass(SyntacticPairWritable.class);
-    job.setMapOutputValueClass(TextPairWritable.class);
+    job.setMapOutputValueClass(CountTupleWritable.class);
     job.setOutputKeyClass(SyntacticPairWritable.class);
-    job.setOutputValueClass(Text.class);
+    job.setOutputValueClass(CountTupleWritable.class);
+    MultipleOutputs.addNamedOutput(
+        job,
+        CountLexemeFeatures.FEATURE_COUNTS,
+        SequenceFileOutputFormat.class,
+        SyntacticPairWritable.class,
+        CountTupleWritable.class);
     return setInputOutput(job, filePath, false);
   }
 
@@ -144,19 +475,65 @@ public class MeasuresAssociationRunner {
     job.setGroupingComparatorClass(
         MeasuresAssociationContext.MeasuresAssociationContextGroupingComparator.class);
     job.setMapOutputKeyClass(SyntacticPairWritable.class);
-    job.setMapOutputValueClass(TextPairWritable.class);
+    job.setMapOutputValueClass(CountTupleWritable.class);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(AssociationMeasuresWritable.class);
     return setInputOutput(job, filePath, true);
   }
 
+  private static String createBroadcastMeasuresOfAssociationJob(Job job, String filePath)
+      throws IOException {
+    job.setJarByClass(MeasuresAssociationContext.class);
+    job.setMapperClass(MeasuresAssociationContext.BroadcastMapperClass.class);
+    job.setNumReduceTasks(0);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(AssociationMeasuresWritable.class);
+    for (FileStatus file : getFeatureCountFiles(filePath)) {
+      addCacheFile(job, file.getPath(), file.getPath().getName());
+    }
+    // Only the <lexeme, feature> triplets, the feature counts are joined from the cache
+    return setInputOutput(job, String.format("%s/part-r-*", filePath), true);
+  }
+
+  /**
+   * Runs the job unless the manifest of a previous run shows the same inputs and configuration,
+   * returns the stage manifest holding the values of the given counters
+   */
+  private static StageManifest runStage(Job job, String outputPath, Enum<?>... counters)
+      throws IOException {
+    return runStage(job, outputPath, createStageManifest(job, outputPath), counters);
+  }
+
+  /** Runs the job unless the given manifest is current, a stale output is removed before the job runs */
+  private static StageManifest runStage(
+      Job job, String outputPath, StageManifest manifest, Enum<?>... counters) throws IOException {
+    if (!manifest.isCurrent()) {
+      waitForJobCompletion(job, outputPath);
+      manifest.store(counters);
+    } else {
+      runReport.addSkippedStage(job.getJobName(), outputPath);
+      writeRunReport();
+    }
+    return manifest;
+  }
+
+  private static StageManifest createStageManifest(Job job, String outputPath) throws IOException {
+    return new StageManifest(
+        job, outputPath, Collections.singletonMap(CORPUS_FILE_COUNT, Integer.toString(corpusFileCount)));
+  }
+
   private static void waitForJobCompletion(final Job job, String outputPath) {
     String description = job.getJobName();
     System.out.printf("Started %s job.%n", description);
     try {
-      if (job.waitForCompletion(true)) {
+      boolean successful = job.waitForCompletion(true);
+      runReport.addStage(job, outputPath, successful);
+      writeRunReport();
+      if (successful) {
         System.out.printf(
             "%s finished successfully, output in S3 bucket %s.%n", description, outputPath);
+        StageProfiler.writeReport(
+            job, outputPath, String.format("%s/profile/%s.json", outputBucketPath, description));
       } else {
         System.out.printf("%s failed!, logs in S3 bucket at %s.%n", description, LOG_PATH);
         System.exit(1);
@@ -167,4 +544,9 @@ public class MeasuresAssociationRunner {
       System.exit(1);
     }
   }
+
+  /** Rewrites the run report next to the result directory, which is read as a whole by the next step */
+  private static void writeRunReport() {
+    runReport.write(baseConfiguration, String.format("%s/run-report.json", outputBucketPath));
+  }
 }
@@ -1,116 +1,324 @@
 package measures_association;
 
-import opennlp.tools.stemmer.PorterStemmer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
-import utils.StopWordsIdentifier;
-import utils.SyntacticTextUtils;
+import utils.ByteKeyCountTable;
+import utils.CachedStemmer;
+import utils.GoldenStandard;
+import utils.ProfilingReducer;
+import utils.StemmedBiarcParser;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Locale;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 public class ParseSyntacticDependencies {
 
+  /**
+   * Emits the lexeme, feature and <lexeme, feature> counts of the legal arcs of a line, shared by the
+   * raw corpus and the ingested corpus mappers.
+   * With the golden standard filter only golden standard lexemes and their pairs are emitted.
+   * Output shape:
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>
+   *    value: <total_count>
+   */
+  public abstract static class ArcCountsMapper<KEYIN, VALUEIN>
+      extends Mapper<KEYIN, VALUEIN, SyntacticKeyWritable, LongWritable> {
+
+    public static final String IN_MAPPER_COMBINE = "inMapperCombine";
+    public static final String IN_MAPPER_COMBINE_MEMORY_MB = "inMapperCombineMemoryMB";
+    private static final int DEFAULT_IN_MAPPER_COMBINE_MEMORY_MB = 64;
+    // Only golden standard lexemes and their pairs are emitted, every feature is still counted
+    public static final String GOLDEN_STANDARD_FILTER = "goldenStandardFilter";
+
+    protected CachedStemmer stemmer;
+
+    private String[] emittedLexemes;
+    private int emittedLexemesCount;
+    private Set<String> goldenStandardLexemes; // null when the golden standard filter is disabled
+
+    private final SyntacticKeyWritable syntacticKey = new SyntacticKeyWritable();
+    private final LongWritable totalCountWritable = new LongWritable();
+
+    // In-mapper combining of the emitted counts, null when disabled
+    private ByteKeyCountTable combiningTable;
+    private long combiningMemoryBytes;
+    private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+    private final DataInputBuffer combinedKeyInput = new DataInputBuffer();
+    private final SyntacticKeyWritable combinedKey = new SyntacticKeyWritable();
+    private final LongWritable combinedCount = new LongWritable();
+
+    protected void setup(Context context) throws IOException {
+      Configuration conf = context.getConfiguration();
+      if (conf.getBoolean(IN_MAPPER_COMBINE, true)) {
+        combiningTable = new ByteKeyCountTable();
+        combiningMemoryBytes =
+            conf.getLong(IN_MAPPER_COMBINE_MEMORY_MB, DEFAULT_IN_MAPPER_COMBINE_MEMORY_MB) << 20;
+      }
+      stemmer = CachedStemmer.create(conf);
+      emittedLexemes = new String[8];
+      if (conf.getBoolean(GOLDEN_STANDARD_FILTER, false)) {
+        goldenStandardLexemes =
+            GoldenStandard.loadStemmedLexemes(
+                String.format("./%s", GoldenStandard.LOCAL_NAME), stemmer);
+      }
+    }
+
+    /** Starts the arcs of a new line */
+    protected void startLine(long totalCount) {
+      totalCountWritable.set(totalCount);
+      emittedLexemesCount = 0;
+    }
+
+    private boolean markEmittedLexeme(String lexeme) {
+      for (int i = 0; i < emittedLexemesCount; ++i) {
+        if (emittedLexemes[i].equals(lexeme)) return false;
+      }
+      if (emittedLexemesCount == emittedLexemes.length) {
+        emittedLexemes = Arrays.copyOf(emittedLexemes, emittedLexemes.length * 2);
+      }
+      emittedLexemes[emittedLexemesCount++] = lexeme;
+      return true;
+    }
+
+    /** Emits the counts of a legal arc of the current line, lexemeText holds the lexeme string */
+    protected void emitArc(
+        String lexeme, Text lexemeText, Text wordText, Text dependencyText, Context context)
+        throws IOException, InterruptedException {
+      long totalCount = totalCountWritable.get();
+
+      // Emit lexemes count
+      boolean emitLexeme = goldenStandardLexemes == null || goldenStandardLexemes.contains(lexeme);
+      if (markEmittedLexeme(lexeme)) {
+        if (emitLexeme) {
+          syntacticKey.setLexeme(lexemeText);
+          emit(syntacticKey, context);
+        }
+        context.getCounter(CounterTypes.LEXEME_COUNTER).increment(totalCount);
+      }
+
+      // Emit features count
+      syntacticKey.setFeature(wordText, dependencyText);
+      emit(syntacticKey, context);
+      context.getCounter(CounterTypes.FEATURE_COUNTER).increment(totalCount);
+
+      // Emit <lexeme, feature> pairs count
+      if (emitLexeme) {
+        syntacticKey.setLexemeFeature(lexemeText, wordText, dependencyText);
+        emit(syntacticKey, context);
+      }
+    }
+
+    private void emit(SyntacticKeyWritable syntacticPart, Context context)
+        throws IOException, InterruptedException {
+      if (combiningTable == null) {
+        context.write(syntacticPart, totalCountWritable);
+        return;
+      }
+      // Combine on the serialized key bytes
+      keyBuffer.reset();
+      syntacticPart.write(keyBuffer);
+      combiningTable.add(keyBuffer.getData(), 0, keyBuffer.getLength(), totalCountWritable.get());
+      if (combiningTable.getMemoryBytes() >= combiningMemoryBytes) {
+        flushCombiningTable(context);
+      }
+    }
+
+    private void flushCombiningTable(Context context) throws IOException, InterruptedException {
+      context.getCounter(CounterTypes.IN_MAPPER_COMBINE_FLUSHES).increment(1);
+      byte[] arena = combiningTable.getArena();
+      for (int entry = 0; entry < combiningTable.size(); ++entry) {
+        combinedKeyInput.reset(
+            arena, combiningTable.getKeyOffset(entry), combiningTable.getKeyLength(entry));
+        combinedKey.readFields(combinedKeyInput);
+        combinedCount.set(combiningTable.getCount(entry));
+        context.write(combinedKey, combinedCount);
+      }
+      combiningTable.clear();
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      if (combiningTable != null) {
+        flushCombiningTable(context);
+      }
+      context.getCounter(CounterTypes.STEM_CACHE_HITS).increment(stemmer.getHits());
+      context.getCounter(CounterTypes.STEM_CACHE_MISSES).increment(stemmer.getMisses());
+    }
+  }
+
   /**
    * Input shape:
    *    key: <line-id>
    *    value: <head_word<TAB>syntactic-ngram<TAB>total_count<TAB>counts_by_year> (syntactic-ngram: [<word/pos-tag/dep-label/head-index>]),
    * Output shape:
-   *    key: <lexeme | feature | <lexeme, feature>>
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>
    *    value: <total_count>
    */
-  public static class MapperClass extends Mapper<LongWritable, Text, Text, LongWritable> {
+  public static class MapperClass extends ArcCountsMapper<LongWritable, Text> {
 
-    private static final Pattern ENG_REGEX = Pattern.compile("[a-z-]+");
-    private PorterStemmer stemmer;
+    private StemmedBiarcParser parser;
+    private final Text lexemeText = new Text();
+    private final Text wordText = new Text();
+    private final Text dependencyText = new Text();
+    private byte[] textBuffer;
 
-    protected void setup(Context context) {
-      stemmer = new PorterStemmer();
-    }
-
-    private boolean isLegalWord(String word) {
-      return ENG_REGEX.matcher(word).matches() && !StopWordsIdentifier.isStopWord(word);
+    @Override
+    protected void setup(Context context) throws IOException {
+      super.setup(context);
+      parser = new StemmedBiarcParser(stemmer);
+      textBuffer = new byte[64];
     }
 
     @Override
     public void map(LongWritable lineId, Text line, Context context)
         throws IOException, InterruptedException {
-      Set<String> emittedLexemes = new HashSet<>();
-
       // head_word<TAB>syntactic-ngram<TAB>total_count<TAB>counts_by_year
-      String[] split = line.toString().split("\t");
-      String[] syntacticNgramSplits = split[1].split(" ");
-      long totalCount = Long.parseLong(split[2]);
-      LongWritable totalCountWritable = new LongWritable(totalCount);
-      String[] words =
-          Arrays.stream(syntacticNgramSplits)
-              .map(s -> stemmer.stem(s.split("/")[0].toLowerCase(Locale.ROOT)))
-              .toArray(String[]::new);
-
-      for (int i = 0; i < syntacticNgramSplits.length; ++i) {
+      if (!parser.parse(line)) return;
+      startLine(parser.getTotalCount());
+
+      for (int i = 0; i < parser.size(); ++i) {
         // word/pos-tag/dep-label/head-index
-        String[] ngramSplits = syntacticNgramSplits[i].split("/");
-
-        if (ngramSplits.length == 4) {
-          String featureWord = words[i];
-          int headIndex = Integer.parseInt(ngramSplits[3]) - 1;
-          if (headIndex < 0 || !isLegalWord(featureWord)) continue;
-
-          // Emit lexemes count
-          String lexeme = words[headIndex];
-          if (!isLegalWord(lexeme)) continue;
-          if (!emittedLexemes.contains(lexeme)) {
-            context.write(new Text(lexeme), totalCountWritable);
-            context.getCounter(CounterTypes.LEXEME_COUNTER).increment(totalCount);
-            emittedLexemes.add(lexeme);
-          }
+        String featureWord = parser.getArcWord(i);
+        if (featureWord == null) continue;
+        String lexeme = parser.getArcLexeme(i);
+        if (lexeme == null) continue;
+        setAscii(lexemeText, lexeme);
+        setAscii(wordText, featureWord);
+        parser.getDependency(i, dependencyText);
+        emitArc(lexeme, lexemeText, wordText, dependencyText, context);
+      }
+    }
 
-          // Emit features count
-          String dependency = ngramSplits[2];
-          context.write(
-                  SyntacticTextUtils.createFeatureText(featureWord, dependency), totalCountWritable);
-          context.getCounter(CounterTypes.FEATURE_COUNTER).increment(totalCount);
+    /** Sets the ASCII word into the text, legal words are ASCII so every char is a single UTF-8 byte */
+    private void setAscii(Text text, String word) {
+      int length = word.length();
+      if (length > textBuffer.length) textBuffer = new byte[Math.max(length, textBuffer.length * 2)];
+      for (int i = 0; i < length; ++i) {
+        textBuffer[i] = (byte) word.charAt(i);
+      }
+      text.set(textBuffer, 0, length);
+    }
+  }
 
-          // Emit <lexeme, feature> pairs count
-          context.write(
-              SyntacticTextUtils.createLexemeFeatureText(lexeme, featureWord, dependency),
-              totalCountWritable);
-        }
+  /**
+   * Same counts as the MapperClass read from the corpus ingest stage output, nothing is tokenized or stemmed.
+   * Input shape:
+   *    key: <null>
+   *    value: <total_count, [<lexeme, word, dependency>]>
+   * Output shape:
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>
+   *    value: <total_count>
+   */
+  public static class IngestedMapperClass extends ArcCountsMapper<NullWritable, IngestedBiarcWritable> {
+
+    @Override
+    public void map(NullWritable key, IngestedBiarcWritable biarc, Context context)
+        throws IOException, InterruptedException {
+      startLine(biarc.getTotalCount());
+      for (int i = 0; i < biarc.size(); ++i) {
+        Text lexemeText = biarc.getLexeme(i);
+        emitArc(lexemeText.toString(), lexemeText, biarc.getWord(i), biarc.getDependency(i), context);
       }
     }
   }
 
   /**
+   * Sums the partial counts on the map side, nothing is pruned before the counts are complete.
+   * Also the reducer of the incremental mode parse and merge jobs, which keep every count.
+   */
+  public static class CombinerClass
+      extends Reducer<SyntacticKeyWritable, LongWritable, SyntacticKeyWritable, LongWritable> {
+
+    private final LongWritable sum = new LongWritable();
+
+    @Override
+    public void reduce(SyntacticKeyWritable syntacticPart, Iterable<LongWritable> counts, Context context)
+        throws IOException, InterruptedException {
+      sum.set(sumCounts(counts));
+      context.write(syntacticPart, sum);
+    }
+  }
+
+  private static long sumCounts(Iterable<LongWritable> counts) {
+    long sum = 0;
+    for (LongWritable count : counts) {
+      sum += count.get();
+    }
+    return sum;
+  }
+
+  /**
+   * Lexemes, features and pairs below their minimum count are pruned, the pairs of a pruned lexeme or
+   * feature are dropped by the next stages joins. The count(L) and count(F) totals are counted by the
+   * mappers so they stay exact.
    * Input shape:
-   *    key: <lexeme | feature | <lexeme, feature>>,
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>,
    *    value: value: [counts]
    * Output shape:
-   *    key: <lexeme | feature | <lexeme, feature>>
+   *    key: <<LEXEME, lexeme> | <FEATURE, word, dependency> | <LEXEME_FEATURE, lexeme, word, dependency>>
    *    value: value: <count(L=lexeme) | count(F=feature) | count(F=feature, L=lexeme)>
    */
-  public static class ReducerClass extends Reducer<Text, LongWritable, Text, LongWritable> {
+  public static class ReducerClass
+      extends ProfilingReducer<SyntacticKeyWritable, LongWritable, SyntacticKeyWritable, LongWritable> {
+
+    public static final String MIN_LEXEME_COUNT = "minLexemeCount";
+    public static final String MIN_FEATURE_COUNT = "minFeatureCount";
+    public static final String MIN_PAIR_COUNT = "minPairCount";
+
+    private long minLexemeCount;
+    private long minFeatureCount;
+    private long minPairCount;
+    private final LongWritable sumWritable = new LongWritable();
+
+    @Override
+    protected void setup(Context context) {
+      Configuration conf = context.getConfiguration();
+      minLexemeCount = conf.getLong(MIN_LEXEME_COUNT, 1);
+      minFeatureCount = conf.getLong(MIN_FEATURE_COUNT, 1);
+      minPairCount = conf.getLong(MIN_PAIR_COUNT, 1);
+    }
+
     @Override
-    public void reduce(Text syntacticPart, Iterable<LongWritable> counts, Context context)
+    public void reduce(SyntacticKeyWritable syntacticPart, Iterable<LongWritable> counts, Context context)
         throws IOException, InterruptedException {
-      long sum = 0;
-      for (LongWritable count : counts) {
-        sum += count.get();
+      long sum = sumCounts(counts);
+      switch (syntacticPart.getType()) {
+        case LEXEME:
+          if (sum < minLexemeCount) {
+            context.getCounter(CounterTypes.PRUNED_LEXEMES).increment(1);
+            return;
+          }
+          break;
+        case FEATURE:
+          if (sum < minFeatureCount) {
+            context.getCounter(CounterTypes.PRUNED_FEATURES).increment(1);
+            return;
+          }
+          break;
+        case LEXEME_FEATURE:
+          if (sum < minPairCount) {
+            context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+            return;
+          }
+          break;
       }
-      context.write(syntacticPart, new LongWritable(sum));
+      sumWritable.set(sum);
+      context.write(syntacticPart, sumWritable);
     }
   }
 
-  public static class PartitionerClass extends Partitioner<Text, LongWritable> {
+  public static class PartitionerClass extends Partitioner<SyntacticKeyWritable, LongWritable> {
 
     @Override
-    public int getPartition(Text key, LongWritable value, int numPartitions) {
+    public int getPartition(SyntacticKeyWritable key, LongWritable value, int numPartitions) {
       return (key.hashCode() & 0xFFFFFFF) % numPartitions;
     }
   }
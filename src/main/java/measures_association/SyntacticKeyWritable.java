@@ -0,0 +1,185 @@
+package measures_association;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Parse stage key, a one byte kind followed by the raw fields of that kind:
+ *    LEXEME: <lexeme>
+ *    FEATURE: <word, dependency>
+ *    LEXEME_FEATURE: <lexeme, word, dependency>
+ * Fields are written as Text (vint length and UTF-8 bytes) so no separator characters are needed.
+ */
+public class SyntacticKeyWritable implements WritableComparable<SyntacticKeyWritable> {
+
+  private static final SyntacticPairWritable.Type[] TYPES = SyntacticPairWritable.Type.values();
+
+  private SyntacticPairWritable.Type type;
+  private final Text lexeme;
+  private final Text word;
+  private final Text dependency;
+
+  static {
+    WritableComparator.define(SyntacticKeyWritable.class, new Comparator());
+  }
+
+  public SyntacticKeyWritable() {
+    type = SyntacticPairWritable.Type.LEXEME;
+    lexeme = new Text();
+    word = new Text();
+    dependency = new Text();
+  }
+
+  public void setLexeme(Text lexeme) {
+    this.type = SyntacticPairWritable.Type.LEXEME;
+    this.lexeme.set(lexeme);
+    this.word.clear();
+    this.dependency.clear();
+  }
+
+  public void setFeature(Text word, Text dependency) {
+    this.type = SyntacticPairWritable.Type.FEATURE;
+    this.lexeme.clear();
+    this.word.set(word);
+    this.dependency.set(dependency);
+  }
+
+  public void setLexemeFeature(Text lexeme, Text word, Text dependency) {
+    this.type = SyntacticPairWritable.Type.LEXEME_FEATURE;
+    this.lexeme.set(lexeme);
+    this.word.set(word);
+    this.dependency.set(dependency);
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    dataOutput.writeByte(type.ordinal());
+    if (type != SyntacticPairWritable.Type.FEATURE) {
+      lexeme.write(dataOutput);
+    }
+    if (type != SyntacticPairWritable.Type.LEXEME) {
+      word.write(dataOutput);
+      dependency.write(dataOutput);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    int kind = dataInput.readByte();
+    if (kind < 0 || kind >= TYPES.length) {
+      throw new IOException("Unknown syntactic key kind: " + kind);
+    }
+    type = TYPES[kind];
+    if (type != SyntacticPairWritable.Type.FEATURE) {
+      lexeme.readFields(dataInput);
+    } else {
+      lexeme.clear();
+    }
+    if (type != SyntacticPairWritable.Type.LEXEME) {
+      word.readFields(dataInput);
+      dependency.readFields(dataInput);
+    } else {
+      word.clear();
+      dependency.clear();
+    }
+  }
+
+  @Override
+  public int compareTo(SyntacticKeyWritable other) {
+    int compareTypes = Integer.compare(type.ordinal(), other.type.ordinal());
+    if (compareTypes != 0) return compareTypes;
+    int compareLexemes = lexeme.compareTo(other.lexeme);
+    if (compareLexemes != 0) return compareLexemes;
+    int compareWords = word.compareTo(other.word);
+    return compareWords != 0 ? compareWords : dependency.compareTo(other.dependency);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof SyntacticKeyWritable && compareTo((SyntacticKeyWritable) other) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = type.ordinal();
+    hash = 31 * hash + WritableComparator.hashBytes(lexeme.getBytes(), lexeme.getLength());
+    hash = 31 * hash + WritableComparator.hashBytes(word.getBytes(), word.getLength());
+    return 31 * hash + WritableComparator.hashBytes(dependency.getBytes(), dependency.getLength());
+  }
+
+  /** Text form of the key: lexeme | word/dependency | <lexeme,word/dependency> */
+  @Override
+  public String toString() {
+    switch (type) {
+      case LEXEME:
+        return lexeme.toString();
+      case FEATURE:
+        return getFeature();
+      default:
+        return String.format("<%s,%s>", lexeme.toString(), getFeature());
+    }
+  }
+
+  public SyntacticPairWritable.Type getType() {
+    return type;
+  }
+
+  public Text getLexeme() {
+    return lexeme;
+  }
+
+  public Text getWord() {
+    return word;
+  }
+
+  public Text getDependency() {
+    return dependency;
+  }
+
+  /** The feature as word/dependency */
+  public String getFeature() {
+    return String.format("%s/%s", word.toString(), dependency.toString());
+  }
+
+  /**
+   * Compares the serialized keys in place, same order as {@link #compareTo(SyntacticKeyWritable)}.
+   * Keys of the same kind hold the same fields, so the fields are compared one after the other.
+   */
+  public static class Comparator extends WritableComparator {
+
+    public Comparator() {
+      super(SyntacticKeyWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      int compareTypes = Integer.compare(b1[s1], b2[s2]);
+      if (compareTypes != 0) return compareTypes;
+      int end1 = s1 + l1;
+      int end2 = s2 + l2;
+      ++s1;
+      ++s2;
+      try {
+        while (s1 < end1 && s2 < end2) { // <lexeme>, <word, dependency> or <lexeme, word, dependency>
+          int length1 = readVInt(b1, s1);
+          int length2 = readVInt(b2, s2);
+          s1 += WritableUtils.decodeVIntSize(b1[s1]);
+          s2 += WritableUtils.decodeVIntSize(b2[s2]);
+          int compareFields = compareBytes(b1, s1, length1, b2, s2, length2);
+          if (compareFields != 0) return compareFields;
+          s1 += length1;
+          s2 += length2;
+        }
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+      return 0;
+    }
+  }
+}
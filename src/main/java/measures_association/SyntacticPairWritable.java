@@ -2,11 +2,13 @@ package measures_association;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.io.WritableUtils;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class SyntacticPairWritable implements WritableComparable<SyntacticPairWritable> {
 
@@ -16,9 +18,17 @@ public class SyntacticPairWritable implements WritableComparable<SyntacticPairWr
     LEXEME_FEATURE
   }
 
+  // Format marker of the first byte, the legacy format starts with a 0 byte
+  private static final int COMPACT_FORMAT = 0x80;
+  private static final Type[] TYPES = Type.values();
+
   private Type type;
   private Text element;
 
+  static {
+    WritableComparator.define(SyntacticPairWritable.class, new Comparator());
+  }
+
   public SyntacticPairWritable() {
     type = Type.LEXEME;
     element = new Text();
@@ -37,23 +47,49 @@ public class SyntacticPairWritable implements WritableComparable<SyntacticPairWr
   @Override
   public int compareTo(SyntacticPairWritable other) {
     int compareElements = element.compareTo(other.element);
-    return compareElements != 0
-        ? compareElements
-        : type.equals(other.type)
-            ? 0
-            : type == Type.LEXEME_FEATURE ? 1 : -1; // ensure that <lexeme,feature> pairs come last
+    return compareElements != 0 ? compareElements : compareTypes(type, other.type);
   }
 
+  /** Ensure that <lexeme,feature> pairs come last */
+  private static int compareTypes(Type type1, Type type2) {
+    return type1 == type2
+        ? 0
+        : type1 == Type.LEXEME_FEATURE
+            ? 1
+            : type2 == Type.LEXEME_FEATURE ? -1 : Integer.compare(type1.ordinal(), type2.ordinal());
+  }
+
+  /**
+   * Reads both the compact format and the legacy format which started with the int length of the
+   * type name, so its first byte is always 0.
+   */
   @Override
   public void readFields(DataInput dataInput) throws IOException {
-    type = Type.valueOf(WritableUtils.readString(dataInput));
-    element = new Text(WritableUtils.readString(dataInput));
+    int first = dataInput.readUnsignedByte();
+    if ((first & COMPACT_FORMAT) != 0) {
+      type = typeOf(first & (COMPACT_FORMAT - 1));
+      element.readFields(dataInput);
+    } else {
+      int typeLength = (first << 24) | (dataInput.readUnsignedByte() << 16) | dataInput.readUnsignedShort();
+      byte[] typeName = new byte[typeLength];
+      dataInput.readFully(typeName);
+      type = Type.valueOf(new String(typeName, StandardCharsets.UTF_8));
+      element.set(WritableUtils.readString(dataInput));
+    }
   }
 
+  /** Compact format: <COMPACT_FORMAT | type-ordinal byte, element-vint-length, element> */
   @Override
   public void write(DataOutput dataOutput) throws IOException {
-    WritableUtils.writeString(dataOutput, type.toString());
-    WritableUtils.writeString(dataOutput, element.toString());
+    dataOutput.writeByte(COMPACT_FORMAT | type.ordinal());
+    element.write(dataOutput);
+  }
+
+  private static Type typeOf(int ordinal) throws IOException {
+    if (ordinal >= TYPES.length) {
+      throw new IOException("Unknown syntactic pair type: " + ordinal);
+    }
+    return TYPES[ordinal];
   }
 
   @Override
@@ -73,4 +109,84 @@ public class SyntacticPairWritable implements WritableComparable<SyntacticPairWr
   public Text getElement() {
     return element;
   }
+
+  /**
+   * Compares the serialized keys in place, same order as {@link #compareTo(SyntacticPairWritable)}.
+   * Serialized shape: <COMPACT_FORMAT | type-ordinal, element-vint-length, element>, or the legacy
+   * <type-name-length, type-name, element-length, element> WritableUtils strings.
+   */
+  public static class Comparator extends WritableComparator {
+
+    public Comparator() {
+      super(SyntacticPairWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      int compareElements = compareElements(b1, s1, b2, s2);
+      return compareElements != 0 ? compareElements : compareTypes(typeAt(b1, s1), typeAt(b2, s2));
+    }
+
+    static int compareElements(byte[] b1, int s1, byte[] b2, int s2) {
+      try {
+        return compareBytes(
+            b1, elementStart(b1, s1), elementLength(b1, s1),
+            b2, elementStart(b2, s2), elementLength(b2, s2));
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    private static boolean isCompact(byte[] bytes, int start) {
+      return (bytes[start] & COMPACT_FORMAT) != 0;
+    }
+
+    private static int elementStart(byte[] bytes, int start) {
+      return isCompact(bytes, start)
+          ? start + 1 + WritableUtils.decodeVIntSize(bytes[start + 1])
+          : start + 8 + readInt(bytes, start);
+    }
+
+    private static int elementLength(byte[] bytes, int start) throws IOException {
+      return isCompact(bytes, start)
+          ? readVInt(bytes, start + 1)
+          : readInt(bytes, start + 4 + readInt(bytes, start));
+    }
+
+    private static Type typeAt(byte[] bytes, int start) {
+      if (isCompact(bytes, start)) {
+        return TYPES[bytes[start] & (COMPACT_FORMAT - 1)];
+      }
+      // The legacy type names have distinct lengths, so the length alone identifies the type
+      switch (readInt(bytes, start)) {
+        case 6:
+          return Type.LEXEME;
+        case 7:
+          return Type.FEATURE;
+        case 14:
+          return Type.LEXEME_FEATURE;
+        default:
+          throw new IllegalArgumentException("Unknown syntactic pair type length: " + readInt(bytes, start));
+      }
+    }
+  }
+
+  /** Groups the serialized keys by their element only */
+  public static class ElementComparator extends WritableComparator {
+
+    public ElementComparator() {
+      super(SyntacticPairWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return Comparator.compareElements(b1, s1, b2, s2);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // WritableComparator declares the raw type
+    public int compare(WritableComparable w1, WritableComparable w2) {
+      return ((SyntacticPairWritable) w1).element.compareTo(((SyntacticPairWritable) w2).element);
+    }
+  }
 }
@@ -0,0 +1,295 @@
+package similarity_vectors;
+
+import measures_association.CounterTypes;
+import measures_association.TextPairWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import utils.ProfilingReducer;
+import utils.SyntacticTextUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Similarity vectors of every lexeme pair sharing a feature, for mining candidate pairs beyond the
+ * golden standard. The lexeme vectors are inverted into a feature index, each feature emits the
+ * partial sums of the lexeme pairs holding it and the partials of a pair are summed and scored with
+ * the aggregates of both lexeme vectors. A pair is only ever met through the features it shares, so
+ * the work is spread over the feature and pair partitions instead of a quadratic pass on a reducer.
+ *
+ * <p>The aggregates of the lexeme vectors are joined to the summed pairs in the shuffle, one lexeme
+ * of the pair at a time: the aggregates of a lexeme are keyed by the lexeme alone and sort ahead of
+ * its pairs, which are partitioned and grouped by their first lexeme. The joined pairs are keyed by
+ * their other lexeme for the second join, so each lexeme shuffles its aggregates twice rather than
+ * once per feature of each of its pairs.
+ */
+public class AllPairsSimilarity {
+
+  /**
+   * Input shape:
+   *    key: <lexeme>
+   *    value: <lexeme vector>
+   * Output shape:
+   *    key: <feature>
+   *    value: <lexeme, [measure_value]>
+   */
+  public static class PostingsMapperClass extends Mapper<Text, LexemeVectorWritable, Text, PostingWritable> {
+
+    private final PostingWritable posting = new PostingWritable();
+
+    @Override
+    public void map(Text lexeme, LexemeVectorWritable vector, Context context)
+        throws IOException, InterruptedException {
+      for (int i = 0; i < vector.size(); ++i) {
+        posting.set(lexeme, vector, i);
+        context.write(vector.getFeature(i), posting);
+      }
+    }
+  }
+
+  /**
+   * Input shape:
+   *    key: <feature>
+   *    value: <lexeme, [measure_value]>
+   * Output shape:
+   *    key: <lexeme1, lexeme2> (lexeme1 < lexeme2)
+   *    value: <[intersection_sum]> of the feature
+   */
+  public static class IndexReducerClass extends ProfilingReducer<Text, PostingWritable, TextPairWritable, PairPartialWritable> {
+
+    // Features of more lexemes are skipped, they add the most pairs and say the least about them
+    public static final String MAX_FEATURE_LEXEMES = "maxFeatureLexemes";
+    private static final int DEFAULT_MAX_FEATURE_LEXEMES = 1000;
+
+    private int maxFeatureLexemes;
+    private final List<PostingWritable> postings = new ArrayList<>(); // Reused across features
+    private final SimilarityKernel kernel = new SimilarityKernel();
+    private final TextPairWritable pair = new TextPairWritable();
+    private final PairPartialWritable partial = new PairPartialWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      maxFeatureLexemes =
+          context.getConfiguration().getInt(MAX_FEATURE_LEXEMES, DEFAULT_MAX_FEATURE_LEXEMES);
+    }
+
+    @Override
+    public void reduce(Text feature, Iterable<PostingWritable> values, Context context)
+        throws IOException, InterruptedException {
+      int count = 0;
+      for (PostingWritable posting : values) {
+        if (count == maxFeatureLexemes) {
+          context.getCounter(CounterTypes.ALL_PAIRS_OVERSIZED_FEATURES).increment(1);
+          return;
+        }
+        if (count == postings.size()) {
+          postings.add(new PostingWritable());
+        }
+        postings.get(count++).set(posting);
+      }
+      List<PostingWritable> featurePostings = postings.subList(0, count);
+      featurePostings.sort(Comparator.comparing(PostingWritable::getLexeme));
+
+      for (int i = 0; i < count; ++i) {
+        PostingWritable posting1 = featurePostings.get(i);
+        for (int j = i + 1; j < count; ++j) {
+          PostingWritable posting2 = featurePostings.get(j);
+          if (posting1.getLexeme().equals(posting2.getLexeme())) continue;
+          kernel.reset();
+          kernel.addIntersection(posting1.getValues(), 0, posting2.getValues(), 0);
+          pair.first.set(posting1.getLexeme());
+          pair.second.set(posting2.getLexeme());
+          partial.setIntersectionSums(kernel.getIntersectionSums());
+          context.write(pair, partial);
+        }
+      }
+    }
+  }
+
+  /**
+   * Input shape:
+   *    key: <lexeme>
+   *    value: <lexeme vector>
+   * Output shape:
+   *    key: <lexeme, ""> (sorts ahead of the pairs of the lexeme)
+   *    value: <[aggregate]>
+   */
+  public static class AggregatesMapperClass extends Mapper<Text, LexemeVectorWritable, TextPairWritable, PairPartialWritable> {
+
+    private final TextPairWritable lexemeKey = new TextPairWritable();
+    private final PairPartialWritable aggregates = new PairPartialWritable();
+
+    @Override
+    public void map(Text lexeme, LexemeVectorWritable vector, Context context)
+        throws IOException, InterruptedException {
+      lexemeKey.first.set(lexeme);
+      aggregates.setAggregates(vector.getAggregates());
+      context.write(lexemeKey, aggregates);
+    }
+  }
+
+  /** Sums the partials of a pair from the features of a map task, the aggregates of a lexeme pass through */
+  public static class PartialsCombinerClass extends Reducer<TextPairWritable, PairPartialWritable, TextPairWritable, PairPartialWritable> {
+
+    private final SimilarityKernel kernel = new SimilarityKernel();
+    private final PairPartialWritable sum = new PairPartialWritable();
+
+    @Override
+    public void reduce(TextPairWritable pair, Iterable<PairPartialWritable> partials, Context context)
+        throws IOException, InterruptedException {
+      kernel.reset();
+      boolean summed = false;
+      for (PairPartialWritable partial : partials) {
+        if (partial.hasAggregates()) {
+          context.write(pair, partial);
+        } else {
+          kernel.addIntersectionSums(partial.getIntersectionSums());
+          summed = true;
+        }
+      }
+      if (summed) {
+        sum.setIntersectionSums(kernel.getIntersectionSums());
+        context.write(pair, sum);
+      }
+    }
+  }
+
+  /**
+   * Input shape (grouped by lexeme1):
+   *    key: <lexeme1, ""> then <lexeme1, lexeme2> (lexeme1 < lexeme2)
+   *    value: <[aggregate1]> then <[intersection_sum]> of the partials of each pair
+   * Output shape:
+   *    key: <lexeme2, lexeme1>
+   *    value: <[intersection_sum], [aggregate1]>
+   */
+  public static class FirstAggregatesReducerClass extends ProfilingReducer<TextPairWritable, PairPartialWritable, TextPairWritable, PairPartialWritable> {
+
+    private final SimilarityKernel kernel = new SimilarityKernel();
+    private final double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+    private final TextPairWritable swapped = new TextPairWritable();
+    private final PairPartialWritable joined = new PairPartialWritable();
+
+    @Override
+    public void reduce(TextPairWritable pair, Iterable<PairPartialWritable> partials, Context context)
+        throws IOException, InterruptedException {
+      swapped.second.set(pair.first);
+      boolean summing = false;
+      for (PairPartialWritable partial : partials) { // The key moves to the pair of each partial
+        if (partial.hasAggregates()) {
+          System.arraycopy(partial.getAggregates(), 0, aggregates, 0, aggregates.length);
+          continue;
+        }
+        if (summing && !pair.second.equals(swapped.first)) {
+          writeJoined(context);
+          summing = false;
+        }
+        if (!summing) {
+          swapped.first.set(pair.second);
+          kernel.reset();
+          summing = true;
+        }
+        kernel.addIntersectionSums(partial.getIntersectionSums());
+      }
+      if (summing) {
+        writeJoined(context);
+      }
+    }
+
+    private void writeJoined(Context context) throws IOException, InterruptedException {
+      joined.set(kernel.getIntersectionSums(), aggregates);
+      context.write(swapped, joined);
+    }
+  }
+
+  /**
+   * Input shape (grouped by lexeme2):
+   *    key: <lexeme2, ""> then <lexeme2, lexeme1> (lexeme1 < lexeme2)
+   *    value: <[aggregate2]> then <[intersection_sum], [aggregate1]>
+   * Output shape:
+   *    key: <<lexeme1, lexeme2>> (pairs scoring at least the threshold)
+   *    value: Similarity vector of the pair, in the positions of the golden standard similarity vectors
+   */
+  public static class PairsReducerClass extends ProfilingReducer<TextPairWritable, PairPartialWritable, Text, SimilarityVectorWritable> {
+
+    // Minimal cosine similarity of the pair vectors of the threshold association measure
+    public static final String THRESHOLD = "allPairsThreshold";
+    public static final String THRESHOLD_MEASURE = "allPairsThresholdMeasure";
+    private static final float DEFAULT_THRESHOLD = 0.1f;
+    private static final String DEFAULT_THRESHOLD_MEASURE = AssociationMeasure.Standard.PMI.getName();
+
+    private double threshold;
+    private int thresholdIndex; // Position of the thresholded similarity in the similarity vector
+    private final SimilarityKernel kernel = new SimilarityKernel();
+    private final double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      threshold = getThreshold(context.getConfiguration());
+      thresholdIndex = getThresholdIndex(context.getConfiguration());
+    }
+
+    static double getThreshold(Configuration conf) {
+      return conf.getFloat(THRESHOLD, DEFAULT_THRESHOLD);
+    }
+
+    static int getThresholdIndex(Configuration conf) {
+      int measure = SimilarityKernel.getMeasureIndex(conf.get(THRESHOLD_MEASURE, DEFAULT_THRESHOLD_MEASURE));
+      int cosine = Arrays.asList(SimilarityKernel.SIMILARITIES).indexOf(VectorSimilarity.Standard.COSINE);
+      return measure * SimilarityKernel.SIMILARITIES.length + cosine;
+    }
+
+    @Override
+    public void reduce(TextPairWritable pair, Iterable<PairPartialWritable> partials, Context context)
+        throws IOException, InterruptedException {
+      for (PairPartialWritable partial : partials) { // The key moves to the pair of each partial
+        if (!partial.hasIntersectionSums()) {
+          System.arraycopy(partial.getAggregates(), 0, aggregates, 0, aggregates.length);
+          continue;
+        }
+        kernel.reset();
+        kernel.addIntersectionSums(partial.getIntersectionSums());
+        double[] similarityVector = kernel.getSimilarityVector(partial.getAggregates(), 0, aggregates, 0);
+        if (!(similarityVector[thresholdIndex] >= threshold)) { // NaN scores are dropped as well
+          context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+          continue;
+        }
+        Text lexemePair =
+            SyntacticTextUtils.createLexemePair(pair.second.toString(), pair.first.toString());
+        context.write(
+            lexemePair, new SimilarityVectorWritable(false, similarityVector, lexemePair.toString()));
+      }
+    }
+  }
+
+  /** Partitions the pairs by their first lexeme, with the aggregates keyed by the lexeme alone */
+  public static class FirstLexemePartitionerClass extends Partitioner<TextPairWritable, Writable> {
+
+    @Override
+    public int getPartition(TextPairWritable key, Writable value, int numPartitions) {
+      return (key.first.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+
+  /** Groups the pairs of a first lexeme in a single reduce call, behind the record keyed by the lexeme alone */
+  public static class FirstLexemeGroupingComparator extends WritableComparator {
+
+    protected FirstLexemeGroupingComparator() {
+      super(TextPairWritable.class, true);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // WritableComparator declares the raw type
+    public int compare(WritableComparable w1, WritableComparable w2) {
+      return ((TextPairWritable) w1).first.compareTo(((TextPairWritable) w2).first);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package similarity_vectors;
+
+import measures_association.AssociationMeasuresWritable;
+
+/** Association measure of a lexeme and a feature, the values of a co-occurrence vector compared by the {@link VectorSimilarity} measures */
+public interface AssociationMeasure {
+
+  /** Prefix of the similarity vector attributes of the measure */
+  String getName();
+
+  /** Comment of the measure attributes group in the classifier input */
+  String getDescription();
+
+  double get(AssociationMeasuresWritable measures);
+
+  /** The measures of the similarity vector, in their output order */
+  enum Standard implements AssociationMeasure {
+    PLAIN_FREQUENCY("plain", "Plain frequency") {
+      @Override
+      public double get(AssociationMeasuresWritable measures) {
+        return measures.getPlainFrequency().get();
+      }
+    },
+    RELATIVE_FREQUENCY("relative", "Relative frequency") {
+      @Override
+      public double get(AssociationMeasuresWritable measures) {
+        return measures.getRelativeFrequency().get();
+      }
+    },
+    PMI("pmi", "PMI frequency") {
+      @Override
+      public double get(AssociationMeasuresWritable measures) {
+        return measures.getPmi().get();
+      }
+    },
+    T_TEST("t_test", "T-Test frequency") {
+      @Override
+      public double get(AssociationMeasuresWritable measures) {
+        return measures.gettTest().get();
+      }
+    };
+
+    private final String name;
+    private final String description;
+
+    Standard(String name, String description) {
+      this.name = name;
+      this.description = description;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getDescription() {
+      return description;
+    }
+  }
+}
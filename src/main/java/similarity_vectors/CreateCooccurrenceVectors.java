@@ -1,18 +1,18 @@
 package similarity_vectors;
 
 import measures_association.AssociationMeasuresWritable;
+import measures_association.CounterTypes;
 import measures_association.TextPairWritable;
-import opennlp.tools.stemmer.PorterStemmer;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
-import org.apache.hadoop.mapreduce.Reducer;
+import utils.CachedStemmer;
+import utils.GoldenStandard;
+import utils.ProfilingReducer;
 import utils.SyntacticTextUtils;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
@@ -30,45 +30,38 @@ public class CreateCooccurrenceVectors {
     public static class MapperClass extends Mapper<Text, AssociationMeasuresWritable, TextPairWritable, AssociationMeasuresWritable> {
 
         private Set<String> goldenStandardLexemes; // Golden Standard lexemes
-        private PorterStemmer stemmer;
+        private CachedStemmer stemmer;
 
         @Override
         protected void setup(Context context) throws IOException {
-            goldenStandardLexemes = new HashSet<>();
-            stemmer = new PorterStemmer();
+            goldenStandardLexemes = Collections.emptySet();
+            stemmer = CachedStemmer.create(context.getConfiguration());
             if (context.getCacheFiles() != null && context.getCacheFiles().length > 0) {
                 URI mappingFileUri = context.getCacheFiles()[0];
                 if (mappingFileUri != null) {
                     String filePath = mappingFileUri.toString().split("#")[1];
-                    parseGoldenStandardFile(String.format("./%s", filePath));
+                    goldenStandardLexemes =
+                            GoldenStandard.loadStemmedLexemes(String.format("./%s", filePath), stemmer);
                 }
             }
         }
 
-        private void parseGoldenStandardFile(String path) {
-            try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] lineParts = line.split("\t");
-                    String[] lexemes = new String[2];
-                    System.arraycopy(lineParts, 0, lexemes, 0, 2);
-                    goldenStandardLexemes.add(stemmer.stem(lexemes[0]).toLowerCase(Locale.ROOT));
-                    goldenStandardLexemes.add(stemmer.stem(lexemes[1]).toLowerCase(Locale.ROOT));
-                }
-            } catch (IOException e) {
-                System.err.println("Error reading golden standard classification file." + e.getMessage());
-            }
-        }
-
         @Override
         public void map(Text lexeme, AssociationMeasuresWritable assocMeasurements, Context context)
                 throws IOException, InterruptedException {
             if (goldenStandardLexemes.contains(lexeme.toString())) {
+                assocMeasurements.fillOmittedLexeme(lexeme);
                 context.write(
                         new TextPairWritable(lexeme, assocMeasurements.getFeature()),
                         assocMeasurements);
             }
         }
+
+        @Override
+        protected void cleanup(Context context) {
+            context.getCounter(CounterTypes.STEM_CACHE_HITS).increment(stemmer.getHits());
+            context.getCounter(CounterTypes.STEM_CACHE_MISSES).increment(stemmer.getMisses());
+        }
     }
 
     /**
@@ -80,7 +73,7 @@ public class CreateCooccurrenceVectors {
      *    value: lexeme co-occurrence vector associated with the lexeme and the <PLAIN | RELATIVE | PMI | TTEST> measurement
      */
   public static class ReducerClass
-      extends Reducer<TextPairWritable, AssociationMeasuresWritable, TextPairWritable, Text> {
+      extends ProfilingReducer<TextPairWritable, AssociationMeasuresWritable, TextPairWritable, Text> {
 
       public enum VectorType {
           PLAIN,
@@ -0,0 +1,171 @@
+package similarity_vectors;
+
+import measures_association.AssociationMeasuresWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sparse co-occurrence vector of a golden standard lexeme, the features are sorted by their bytes
+ * and each holds the values of the registered {@link AssociationMeasure}s. The vector also holds the
+ * {@link SimilarityKernel} aggregates of its features.
+ * Serialized shape: <feature_count, [<feature, [measure_value]>], [aggregate]> where the count is a vint,
+ * an empty vector leaves its aggregates out.
+ */
+public class LexemeVectorWritable implements Writable {
+
+  private static final int MEASURES = SimilarityKernel.MEASURES.length;
+
+  private int size;
+  private Text[] features = new Text[0];
+  private double[] values = new double[0];
+  private final double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+
+  public void reset() {
+    size = 0;
+  }
+
+  public void set(LexemeVectorWritable other) {
+    ensureCapacity(other.size);
+    for (int i = 0; i < other.size; ++i) {
+      features[i].set(other.features[i]);
+    }
+    System.arraycopy(other.values, 0, values, 0, other.size * MEASURES);
+    System.arraycopy(other.aggregates, 0, aggregates, 0, aggregates.length);
+    size = other.size;
+  }
+
+  public void add(AssociationMeasuresWritable measures) {
+    ensureCapacity(size + 1);
+    features[size].set(measures.getFeature());
+    for (int i = 0; i < MEASURES; ++i) {
+      values[size * MEASURES + i] = SimilarityKernel.MEASURES[i].get(measures);
+    }
+    ++size;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= features.length) return;
+    int previous = features.length;
+    capacity = Math.max(capacity, previous * 2);
+    features = Arrays.copyOf(features, capacity);
+    values = Arrays.copyOf(values, capacity * MEASURES);
+    for (int i = previous; i < capacity; ++i) {
+      features[i] = new Text();
+    }
+  }
+
+  /** Sorts the added features, the shuffle does not order the values of a lexeme */
+  public void sortByFeature() {
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (first, second) -> features[first].compareTo(features[second]));
+    Text[] sortedFeatures = new Text[features.length];
+    double[] sortedValues = new double[values.length];
+    for (int i = 0; i < size; ++i) {
+      sortedFeatures[i] = features[order[i]];
+      System.arraycopy(values, order[i] * MEASURES, sortedValues, i * MEASURES, MEASURES);
+    }
+    System.arraycopy(features, size, sortedFeatures, size, features.length - size);
+    features = sortedFeatures;
+    values = sortedValues;
+  }
+
+  /** Computes the aggregates of the sorted vector */
+  public void aggregate() {
+    Arrays.fill(aggregates, 0);
+    SimilarityKernel.aggregate(values, size, aggregates, 0);
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    WritableUtils.writeVInt(dataOutput, size);
+    for (int i = 0; i < size; ++i) {
+      features[i].write(dataOutput);
+      for (int j = 0; j < MEASURES; ++j) {
+        dataOutput.writeDouble(values[i * MEASURES + j]);
+      }
+    }
+    if (size == 0) return; // The aggregates of no features are 0
+    for (double aggregate : aggregates) {
+      dataOutput.writeDouble(aggregate);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    size = WritableUtils.readVInt(dataInput);
+    ensureCapacity(size);
+    for (int i = 0; i < size; ++i) {
+      features[i].readFields(dataInput);
+      for (int j = 0; j < MEASURES; ++j) {
+        values[i * MEASURES + j] = dataInput.readDouble();
+      }
+    }
+    if (size == 0) {
+      Arrays.fill(aggregates, 0);
+      return;
+    }
+    for (int i = 0; i < aggregates.length; ++i) {
+      aggregates[i] = dataInput.readDouble();
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Text getFeature(int index) {
+    return features[index];
+  }
+
+  /**
+   * Gallops from the index to the feature, a walk over the shared features of a short and a long
+   * vector only compares a logarithmic number of the long vector features.
+   *
+   * @return the index of the feature, or -(insertion index) - 1 if the vector does not hold it
+   */
+  public int findFeature(Text feature, int from) {
+    int low = from;
+    int high = from;
+    int step = 1;
+    while (high < size && features[high].compareTo(feature) < 0) {
+      low = high + 1;
+      high += step;
+      step <<= 1;
+    }
+    high = Math.min(high, size - 1);
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int compare = features[middle].compareTo(feature);
+      if (compare < 0) {
+        low = middle + 1;
+      } else if (compare > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -low - 1;
+  }
+
+  /** The measure values of a feature start at this offset of {@link #getValues()} */
+  public int getValuesOffset(int index) {
+    return index * MEASURES;
+  }
+
+  public double[] getValues() {
+    return values;
+  }
+
+  public double[] getAggregates() {
+    return aggregates;
+  }
+}
@@ -0,0 +1,78 @@
+package similarity_vectors;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Looks lexeme vectors up in the map files of the lexeme vectors job, the partition of a lexeme is
+ * found like the job partitioned it. The least recently used vectors are kept so consecutive pairs
+ * of a lexeme read its vector once.
+ */
+public class LexemeVectorsReader implements Closeable {
+
+  public static final String CACHE_SIZE = "lexemeVectorCacheSize"; // Vectors kept for the next pairs
+  private static final int DEFAULT_CACHE_SIZE = 64;
+
+  private final MapFile.Reader[] readers;
+  private final HashPartitioner<Text, LexemeVectorWritable> partitioner = new HashPartitioner<>();
+  private final Map<String, LexemeVectorWritable> vectors; // Null if the lexeme has no vector
+
+  public LexemeVectorsReader(Path directory, Configuration conf) throws IOException {
+    readers = openReaders(directory, conf);
+    int cacheSize = conf.getInt(CACHE_SIZE, DEFAULT_CACHE_SIZE);
+    vectors =
+        new LinkedHashMap<String, LexemeVectorWritable>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, LexemeVectorWritable> eldest) {
+            return size() > cacheSize;
+          }
+        };
+  }
+
+  /**
+   * Opens the map file of every partition in partition order, {@link
+   * MapFileOutputFormat#getReaders} would also open the _SUCCESS file of the job output
+   */
+  private static MapFile.Reader[] openReaders(Path directory, Configuration conf) throws IOException {
+    FileStatus[] partitions =
+        directory.getFileSystem(conf).listStatus(
+            directory,
+            path -> !path.getName().startsWith("_") && !path.getName().startsWith("."));
+    Arrays.sort(partitions);
+    MapFile.Reader[] readers = new MapFile.Reader[partitions.length];
+    for (int i = 0; i < partitions.length; ++i) {
+      readers[i] = new MapFile.Reader(partitions[i].getPath(), conf);
+    }
+    return readers;
+  }
+
+  /** Returns the vector of the lexeme, or null if the lexeme has no co-occurrences */
+  public LexemeVectorWritable get(Text lexeme) throws IOException {
+    String key = lexeme.toString();
+    if (vectors.containsKey(key)) return vectors.get(key);
+    LexemeVectorWritable vector = new LexemeVectorWritable();
+    if (MapFileOutputFormat.getEntry(readers, partitioner, lexeme, vector) == null) {
+      vector = null;
+    }
+    vectors.put(key, vector);
+    return vector;
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (MapFile.Reader reader : readers) {
+      reader.close();
+    }
+  }
+}
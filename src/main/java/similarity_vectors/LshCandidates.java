@@ -0,0 +1,448 @@
+package similarity_vectors;
+
+import measures_association.CounterTypes;
+import measures_association.TextPairWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import utils.ProfilingReducer;
+import utils.SyntacticTextUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Nearest lexeme candidates by locality sensitive hashing of the lexeme vectors: a weighted MinHash
+ * signature approximates the Jaccard measure of a chosen association measure and SimHash
+ * signatures approximate the cosine of others. Each signature is cut into bands of rows, lexemes
+ * sharing a band are candidate pairs and only the candidates are scored by the {@link
+ * SimilarityKernel}. More rows per band find fewer and more similar candidates, more bands recall
+ * more of the similar pairs.
+ */
+public class LshCandidates {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  private static final long SIMHASH_SEED = 0x5DEECE66DL;
+
+  /** SplitMix64 of the value, the hashes of consecutive values are independent */
+  static long mix(long value) {
+    long z = value + GOLDEN_GAMMA;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /** 64 bit FNV-1a hash of the text bytes */
+  static long hash(Text text) {
+    long hash = 0xCBF29CE484222325L;
+    byte[] bytes = text.getBytes();
+    for (int i = 0; i < text.getLength(); ++i) {
+      hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  /** The n-th uniform value in (0, 1) of the seed */
+  private static double uniform(long seed, int n) {
+    return ((mix(seed + n * GOLDEN_GAMMA) >>> 11) + 0.5) * 0x1.0p-53;
+  }
+
+  /**
+   * Input shape:
+   *    key: <lexeme>
+   *    value: <lexeme vector>
+   * Output shape:
+   *    key: <scheme:band:band-hash>
+   *    value: <lexeme>
+   */
+  public static class SignatureMapperClass extends Mapper<Text, LexemeVectorWritable, Text, Text> {
+
+    public static final String MINHASH_MEASURE = "lshMinHashMeasure";
+    public static final String MINHASH_BANDS = "lshMinHashBands"; // 0 disables the MinHash signature
+    public static final String MINHASH_ROWS = "lshMinHashRows";
+    public static final String SIMHASH_MEASURES = "lshSimHashMeasures"; // Comma separated, empty disables SimHash
+    public static final String SIMHASH_BANDS = "lshSimHashBands";
+    public static final String SIMHASH_ROWS = "lshSimHashRows"; // At most 64
+    private static final String DEFAULT_MINHASH_MEASURE = AssociationMeasure.Standard.PLAIN_FREQUENCY.getName();
+    private static final int DEFAULT_MINHASH_BANDS = 16;
+    private static final int DEFAULT_MINHASH_ROWS = 4;
+    private static final String DEFAULT_SIMHASH_MEASURES =
+        String.format(
+            "%s,%s",
+            AssociationMeasure.Standard.PMI.getName(), AssociationMeasure.Standard.T_TEST.getName());
+    private static final int DEFAULT_SIMHASH_BANDS = 8;
+    private static final int DEFAULT_SIMHASH_ROWS = 8;
+
+    private int minHashMeasure;
+    private int minHashBands;
+    private int minHashRows;
+    private int[] simHashMeasures;
+    private int simHashBands;
+    private int simHashRows;
+
+    private long[] featureHashes = new long[0];
+    private double[] minHashValues; // Logarithm of the smallest sample of each hash function
+    private long[] minHashFeatures;
+    private long[] minHashSteps;
+    private double[] simHashSums;
+    private final Text bucket = new Text();
+
+    @Override
+    protected void setup(Context context) {
+      Configuration conf = context.getConfiguration();
+      minHashMeasure = SimilarityKernel.getMeasureIndex(conf.get(MINHASH_MEASURE, DEFAULT_MINHASH_MEASURE));
+      minHashBands = conf.getInt(MINHASH_BANDS, DEFAULT_MINHASH_BANDS);
+      minHashRows = conf.getInt(MINHASH_ROWS, DEFAULT_MINHASH_ROWS);
+      simHashMeasures =
+          Arrays.stream(conf.get(SIMHASH_MEASURES, DEFAULT_SIMHASH_MEASURES).split(","))
+              .map(String::trim)
+              .filter(name -> !name.isEmpty())
+              .mapToInt(SimilarityKernel::getMeasureIndex)
+              .toArray();
+      simHashBands = conf.getInt(SIMHASH_BANDS, DEFAULT_SIMHASH_BANDS);
+      simHashRows = conf.getInt(SIMHASH_ROWS, DEFAULT_SIMHASH_ROWS);
+      if (simHashRows > Long.SIZE) {
+        throw new IllegalArgumentException(
+            String.format("%s is %d, a band holds at most %d bits.", SIMHASH_ROWS, simHashRows, Long.SIZE));
+      }
+      minHashValues = new double[minHashBands * minHashRows];
+      minHashFeatures = new long[minHashValues.length];
+      minHashSteps = new long[minHashValues.length];
+      simHashSums = new double[simHashBands * simHashRows];
+    }
+
+    @Override
+    public void map(Text lexeme, LexemeVectorWritable vector, Context context)
+        throws IOException, InterruptedException {
+      if (featureHashes.length < vector.size()) {
+        featureHashes = new long[Math.max(vector.size(), featureHashes.length * 2)];
+      }
+      for (int i = 0; i < vector.size(); ++i) {
+        featureHashes[i] = hash(vector.getFeature(i));
+      }
+
+      if (minHashBands > 0 && minHash(vector)) {
+        for (int band = 0; band < minHashBands; ++band) {
+          long bandHash = mix(band);
+          for (int row = band * minHashRows; row < (band + 1) * minHashRows; ++row) {
+            bandHash = mix(bandHash ^ minHashFeatures[row]);
+            bandHash = mix(bandHash ^ minHashSteps[row]);
+          }
+          bucket.set(
+              String.format(
+                  "minhash-%s:%d:%x", SimilarityKernel.MEASURES[minHashMeasure].getName(), band, bandHash));
+          context.write(bucket, lexeme);
+        }
+      }
+      for (int measure : simHashMeasures) {
+        if (simHashBands == 0 || !simHash(vector, measure)) continue;
+        for (int band = 0; band < simHashBands; ++band) {
+          long bits = 0;
+          for (int row = 0; row < simHashRows; ++row) {
+            if (simHashSums[band * simHashRows + row] >= 0) {
+              bits |= 1L << row;
+            }
+          }
+          bucket.set(
+              String.format("simhash-%s:%d:%x", SimilarityKernel.MEASURES[measure].getName(), band, bits));
+          context.write(bucket, lexeme);
+        }
+      }
+    }
+
+    /**
+     * Consistent weighted sampling (Ioffe, 2010) of the positive measure values, two vectors agree
+     * on a hash function with the probability of their weighted Jaccard measure.
+     *
+     * @return false if the vector has no positive value to sample
+     */
+    private boolean minHash(LexemeVectorWritable vector) {
+      Arrays.fill(minHashValues, Double.POSITIVE_INFINITY);
+      boolean sampled = false;
+      for (int i = 0; i < vector.size(); ++i) {
+        double weight = vector.getValues()[vector.getValuesOffset(i) + minHashMeasure];
+        if (!(weight > 0)) continue;
+        sampled = true;
+        double logWeight = Math.log(weight);
+        for (int function = 0; function < minHashValues.length; ++function) {
+          long seed = featureHashes[i] ^ mix(~function);
+          double r = -Math.log(uniform(seed, 0) * uniform(seed, 1)); // Gamma(2, 1)
+          double c = -Math.log(uniform(seed, 2) * uniform(seed, 3));
+          double beta = uniform(seed, 4);
+          double step = Math.floor(logWeight / r + beta);
+          double logSample = Math.log(c) - r * (step - beta + 1);
+          if (logSample < minHashValues[function]) {
+            minHashValues[function] = logSample;
+            minHashFeatures[function] = featureHashes[i];
+            minHashSteps[function] = (long) step;
+          }
+        }
+      }
+      return sampled;
+    }
+
+    /**
+     * Projects the measure values on random hyperplanes, a feature adds its value to a bit or
+     * subtracts it by a bit of its hash. Two vectors agree on a bit with probability 1 - angle / pi.
+     *
+     * @return false if the vector has no nonzero value of the measure
+     */
+    private boolean simHash(LexemeVectorWritable vector, int measure) {
+      Arrays.fill(simHashSums, 0);
+      boolean projected = false;
+      for (int i = 0; i < vector.size(); ++i) {
+        double weight = vector.getValues()[vector.getValuesOffset(i) + measure];
+        if (weight == 0 || Double.isNaN(weight)) continue;
+        projected = true;
+        long signs = 0;
+        for (int bit = 0; bit < simHashSums.length; ++bit) {
+          if ((bit & (Long.SIZE - 1)) == 0) {
+            signs = mix(featureHashes[i] ^ mix(SIMHASH_SEED + bit));
+          }
+          simHashSums[bit] += (signs >>> (bit & (Long.SIZE - 1)) & 1) != 0 ? weight : -weight;
+        }
+      }
+      return projected;
+    }
+  }
+
+  /**
+   * Input shape:
+   *    key: <scheme:band:band-hash>
+   *    value: <lexeme>
+   * Output shape:
+   *    key: <lexeme1, lexeme2> (lexeme1 < lexeme2, a pair is written once per shared bucket)
+   *    value: <>
+   */
+  public static class BucketReducerClass extends ProfilingReducer<Text, Text, TextPairWritable, NullWritable> {
+
+    // Larger buckets are skipped, their lexemes agree on a band by a common skew rather than similarity
+    public static final String MAX_BUCKET_LEXEMES = "lshMaxBucketLexemes";
+    private static final int DEFAULT_MAX_BUCKET_LEXEMES = 1000;
+
+    private int maxBucketLexemes;
+    private final List<String> lexemes = new ArrayList<>();
+    private final TextPairWritable pair = new TextPairWritable();
+
+    @Override
+    protected void setup(Context context) {
+      maxBucketLexemes =
+          context.getConfiguration().getInt(MAX_BUCKET_LEXEMES, DEFAULT_MAX_BUCKET_LEXEMES);
+    }
+
+    @Override
+    public void reduce(Text bucket, Iterable<Text> values, Context context)
+        throws IOException, InterruptedException {
+      lexemes.clear();
+      for (Text lexeme : values) {
+        if (lexemes.size() == maxBucketLexemes) {
+          context.getCounter(CounterTypes.LSH_OVERSIZED_BUCKETS).increment(1);
+          return;
+        }
+        lexemes.add(lexeme.toString());
+      }
+      Collections.sort(lexemes);
+      for (int i = 0; i < lexemes.size(); ++i) {
+        for (int j = i + 1; j < lexemes.size(); ++j) {
+          if (lexemes.get(i).equals(lexemes.get(j))) continue;
+          pair.first.set(lexemes.get(i));
+          pair.second.set(lexemes.get(j));
+          context.write(pair, NullWritable.get());
+        }
+      }
+    }
+  }
+
+  /**
+   * Input shape:
+   *    key: <lexeme1, lexeme2>
+   *    value: <>
+   * Output shape:
+   *    key: <lexeme1, lexeme2>
+   *    value: <empty lexeme vector>
+   */
+  public static class CandidatesMapperClass extends Mapper<TextPairWritable, NullWritable, TextPairWritable, LexemeVectorWritable> {
+
+    private final LexemeVectorWritable empty = new LexemeVectorWritable();
+
+    @Override
+    public void map(TextPairWritable pair, NullWritable value, Context context)
+        throws IOException, InterruptedException {
+      context.write(pair, empty);
+    }
+  }
+
+  /**
+   * Input shape:
+   *    key: <lexeme>
+   *    value: <lexeme vector>
+   * Output shape:
+   *    key: <lexeme, ""> (sorts ahead of the pairs of the lexeme)
+   *    value: <lexeme vector>
+   */
+  public static class VectorsMapperClass extends Mapper<Text, LexemeVectorWritable, TextPairWritable, LexemeVectorWritable> {
+
+    private final TextPairWritable lexemeKey = new TextPairWritable();
+
+    @Override
+    public void map(Text lexeme, LexemeVectorWritable vector, Context context)
+        throws IOException, InterruptedException {
+      lexemeKey.first.set(lexeme);
+      context.write(lexemeKey, vector);
+    }
+  }
+
+  /** Writes each candidate pair of a map task once, the vector of a lexeme passes through */
+  public static class DistinctCombinerClass extends Reducer<TextPairWritable, LexemeVectorWritable, TextPairWritable, LexemeVectorWritable> {
+
+    @Override
+    public void reduce(TextPairWritable pair, Iterable<LexemeVectorWritable> values, Context context)
+        throws IOException, InterruptedException {
+      context.write(pair, values.iterator().next());
+    }
+  }
+
+  /**
+   * Joins the candidates with the vector of their first lexeme. The vector is shuffled again with
+   * each candidate of the lexeme, the join costs about a vector per candidate pair but reads every
+   * vector in order instead of a map file lookup per pair.
+   *
+   * Input shape (grouped by lexeme1):
+   *    key: <lexeme1, ""> then <lexeme1, lexeme2> (lexeme1 < lexeme2, a pair may repeat)
+   *    value: <lexeme1 vector> then <empty lexeme vector>
+   * Output shape:
+   *    key: <lexeme2, lexeme1>
+   *    value: <lexeme1 vector>
+   */
+  public static class FirstVectorsReducerClass extends ProfilingReducer<TextPairWritable, LexemeVectorWritable, TextPairWritable, LexemeVectorWritable> {
+
+    private final LexemeVectorWritable vector1 = new LexemeVectorWritable();
+    private final TextPairWritable swapped = new TextPairWritable();
+
+    @Override
+    public void reduce(TextPairWritable pair, Iterable<LexemeVectorWritable> values, Context context)
+        throws IOException, InterruptedException {
+      swapped.second.set(pair.first);
+      boolean hasVector = false;
+      boolean joined = false;
+      for (LexemeVectorWritable vector : values) { // The key moves to the pair of each value
+        if (pair.second.getLength() == 0) {
+          vector1.set(vector);
+          hasVector = true;
+          continue;
+        }
+        if (!hasVector) return; // Never met for candidates of the signatures of the vectors
+        if (joined && pair.second.equals(swapped.first)) continue; // Candidate of several map tasks
+        swapped.first.set(pair.second);
+        joined = true;
+        context.write(swapped, vector1);
+      }
+    }
+  }
+
+  /**
+   * Input shape (grouped by lexeme2):
+   *    key: <lexeme2, ""> then <lexeme2, lexeme1> (lexeme1 < lexeme2)
+   *    value: <lexeme2 vector> then <lexeme1 vector>
+   * Output shape:
+   *    key: <<lexeme1, lexeme2>> (candidates scoring at least the all pairs threshold)
+   *    value: Similarity vector of the pair, in the positions of the golden standard similarity vectors
+   */
+  public static class CandidatesReducerClass extends ProfilingReducer<TextPairWritable, LexemeVectorWritable, Text, SimilarityVectorWritable> {
+
+    private double threshold;
+    private int thresholdIndex;
+    private final SimilarityKernel kernel = new SimilarityKernel();
+    private final LexemeVectorWritable vector2 = new LexemeVectorWritable();
+
+    @Override
+    protected void setup(Context context) {
+      threshold = AllPairsSimilarity.PairsReducerClass.getThreshold(context.getConfiguration());
+      thresholdIndex = AllPairsSimilarity.PairsReducerClass.getThresholdIndex(context.getConfiguration());
+    }
+
+    @Override
+    public void reduce(TextPairWritable pair, Iterable<LexemeVectorWritable> values, Context context)
+        throws IOException, InterruptedException {
+      boolean hasVector = false;
+      for (LexemeVectorWritable vector1 : values) { // The key moves to the pair of each value
+        if (pair.second.getLength() == 0) {
+          vector2.set(vector1);
+          hasVector = true;
+          continue;
+        }
+        if (!hasVector) return;
+        kernel.reset();
+        kernel.addIntersection(vector1, vector2);
+        double[] similarityVector =
+            kernel.getSimilarityVector(vector1.getAggregates(), 0, vector2.getAggregates(), 0);
+        if (!(similarityVector[thresholdIndex] >= threshold)) {
+          context.getCounter(CounterTypes.PRUNED_PAIRS).increment(1);
+          continue;
+        }
+        Text lexemePair =
+            SyntacticTextUtils.createLexemePair(pair.second.toString(), pair.first.toString());
+        context.write(
+            lexemePair, new SimilarityVectorWritable(false, similarityVector, lexemePair.toString()));
+      }
+    }
+  }
+
+  /** Tags a pair of the exact all pairs similarity of the lexeme sample */
+  public static class ExactPairsMapperClass extends Mapper<Text, Text, Text, BooleanWritable> {
+
+    private final BooleanWritable exact = new BooleanWritable(true);
+
+    @Override
+    public void map(Text pair, Text similarityVector, Context context)
+        throws IOException, InterruptedException {
+      context.write(pair, exact);
+    }
+  }
+
+  /** Tags a pair scored from the candidates */
+  public static class CandidatePairsMapperClass extends Mapper<Text, Text, Text, BooleanWritable> {
+
+    private final BooleanWritable exact = new BooleanWritable(false);
+
+    @Override
+    public void map(Text pair, Text similarityVector, Context context)
+        throws IOException, InterruptedException {
+      context.write(pair, exact);
+    }
+  }
+
+  /**
+   * Input shape:
+   *    key: <<lexeme1, lexeme2>>
+   *    value: <is exact pair>
+   * Output shape:
+   *    key: <<lexeme1, lexeme2>> (exact pairs the candidates missed)
+   *    value: <>
+   */
+  public static class RecallReducerClass extends Reducer<Text, BooleanWritable, Text, NullWritable> {
+
+    @Override
+    public void reduce(Text pair, Iterable<BooleanWritable> values, Context context)
+        throws IOException, InterruptedException {
+      boolean exact = false, candidate = false;
+      for (BooleanWritable value : values) {
+        exact |= value.get();
+        candidate |= !value.get();
+      }
+      if (!exact) return;
+      context.getCounter(CounterTypes.LSH_EXACT_PAIRS).increment(1);
+      if (candidate) {
+        context.getCounter(CounterTypes.LSH_RECALLED_PAIRS).increment(1);
+      } else {
+        context.write(pair, NullWritable.get());
+      }
+    }
+  }
+}
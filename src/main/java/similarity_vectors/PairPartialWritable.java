@@ -0,0 +1,92 @@
+package similarity_vectors;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Partial similarity of a lexeme pair and the aggregates joined to it in the shuffle: the {@link
+ * SimilarityKernel} sums over some of the features both lexemes share, the aggregates of a single
+ * lexeme vector, or the summed pair with the aggregates of one of its lexemes. A pair gets the
+ * aggregates of its lexemes once, not on every feature it shares.
+ * Serialized shape: <has-sums, has-aggregates, [intersection_sum]?, [aggregate]?>
+ */
+public class PairPartialWritable implements Writable {
+
+  private boolean hasIntersectionSums;
+  private boolean hasAggregates;
+  private final double[] intersectionSums = new double[SimilarityKernel.INTERSECTION_SIZE];
+  private final double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+
+  /** Sets the partial to the sums over shared features only */
+  public void setIntersectionSums(double[] intersectionSums) {
+    set(intersectionSums, null);
+  }
+
+  /** Sets the partial to the aggregates of a lexeme vector only */
+  public void setAggregates(double[] aggregates) {
+    set(null, aggregates);
+  }
+
+  /** Sets the sums and the aggregates, a null array is left out of the partial */
+  public void set(double[] intersectionSums, double[] aggregates) {
+    hasIntersectionSums = intersectionSums != null;
+    hasAggregates = aggregates != null;
+    if (hasIntersectionSums) {
+      System.arraycopy(intersectionSums, 0, this.intersectionSums, 0, this.intersectionSums.length);
+    }
+    if (hasAggregates) {
+      System.arraycopy(aggregates, 0, this.aggregates, 0, this.aggregates.length);
+    }
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    dataOutput.writeBoolean(hasIntersectionSums);
+    dataOutput.writeBoolean(hasAggregates);
+    if (hasIntersectionSums) {
+      for (double sum : intersectionSums) {
+        dataOutput.writeDouble(sum);
+      }
+    }
+    if (hasAggregates) {
+      for (double aggregate : aggregates) {
+        dataOutput.writeDouble(aggregate);
+      }
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    hasIntersectionSums = dataInput.readBoolean();
+    hasAggregates = dataInput.readBoolean();
+    if (hasIntersectionSums) {
+      for (int i = 0; i < intersectionSums.length; ++i) {
+        intersectionSums[i] = dataInput.readDouble();
+      }
+    }
+    if (hasAggregates) {
+      for (int i = 0; i < aggregates.length; ++i) {
+        aggregates[i] = dataInput.readDouble();
+      }
+    }
+  }
+
+  public boolean hasIntersectionSums() {
+    return hasIntersectionSums;
+  }
+
+  public boolean hasAggregates() {
+    return hasAggregates;
+  }
+
+  public double[] getIntersectionSums() {
+    return intersectionSums;
+  }
+
+  public double[] getAggregates() {
+    return aggregates;
+  }
+}
@@ -0,0 +1,53 @@
+package similarity_vectors;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Entry of a feature in the inverted index of the lexeme vectors: the lexeme holding the feature and
+ * its {@link AssociationMeasure} values for the feature.
+ * Serialized shape: <lexeme, [measure_value]>
+ */
+public class PostingWritable implements Writable {
+
+  private final Text lexeme = new Text();
+  private final double[] values = new double[SimilarityKernel.MEASURES.length];
+
+  public void set(Text lexeme, LexemeVectorWritable vector, int index) {
+    this.lexeme.set(lexeme);
+    System.arraycopy(vector.getValues(), vector.getValuesOffset(index), values, 0, values.length);
+  }
+
+  public void set(PostingWritable other) {
+    lexeme.set(other.lexeme);
+    System.arraycopy(other.values, 0, values, 0, values.length);
+  }
+
+  @Override
+  public void write(DataOutput dataOutput) throws IOException {
+    lexeme.write(dataOutput);
+    for (double value : values) {
+      dataOutput.writeDouble(value);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput dataInput) throws IOException {
+    lexeme.readFields(dataInput);
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = dataInput.readDouble();
+    }
+  }
+
+  public Text getLexeme() {
+    return lexeme;
+  }
+
+  public double[] getValues() {
+    return values;
+  }
+}
@@ -0,0 +1,142 @@
+package similarity_vectors;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Similarity computation of a lexeme pair over the registered association and vector similarity
+ * measures. The sums of every (association measure, similarity measure) are kept in primitive
+ * arrays reused across pairs, the similarity vector is ordered by association measure and then by
+ * similarity measure.
+ *
+ * <p>A pair is computed from the aggregates of each vector, computed once per lexeme by {@link
+ * #aggregate}, and a pass over the shared features only ({@link #addIntersection}).
+ */
+public class SimilarityKernel {
+
+  public static final AssociationMeasure[] MEASURES = AssociationMeasure.Standard.values();
+  public static final VectorSimilarity[] SIMILARITIES = VectorSimilarity.Standard.values();
+  public static final int VECTOR_SIZE = MEASURES.length * SIMILARITIES.length;
+
+  // Slot offsets of each similarity measure inside the slots of an association measure, the last
+  // element is the slot count of an association measure
+  private static final int[] AGGREGATE_OFFSETS = getOffsets(VectorSimilarity::getAggregateSlots);
+  private static final int[] INTERSECTION_OFFSETS = getOffsets(VectorSimilarity::getIntersectionSlots);
+
+  /** Number of aggregates of a vector */
+  public static final int AGGREGATE_SIZE = MEASURES.length * AGGREGATE_OFFSETS[SIMILARITIES.length];
+  /** Number of sums over the shared features of a pair */
+  public static final int INTERSECTION_SIZE = MEASURES.length * INTERSECTION_OFFSETS[SIMILARITIES.length];
+
+  private final double[] intersectionSums = new double[INTERSECTION_SIZE];
+
+  /** Index of the registered association measure of the name */
+  public static int getMeasureIndex(String name) {
+    for (int i = 0; i < MEASURES.length; ++i) {
+      if (MEASURES[i].getName().equals(name)) return i;
+    }
+    throw new IllegalArgumentException(String.format("Unknown association measure %s.", name));
+  }
+
+  private static int[] getOffsets(ToIntFunction<VectorSimilarity> slots) {
+    int[] offsets = new int[SIMILARITIES.length + 1];
+    for (int i = 0; i < SIMILARITIES.length; ++i) {
+      offsets[i + 1] = offsets[i] + slots.applyAsInt(SIMILARITIES[i]);
+    }
+    return offsets;
+  }
+
+  /** Starts a new lexeme pair */
+  public void reset() {
+    Arrays.fill(intersectionSums, 0);
+  }
+
+  /**
+   * Adds the aggregates of the features of a vector to the aggregates array at the offset.
+   *
+   * @param values the measure values of the features, one value per association measure
+   */
+  public static void aggregate(double[] values, int features, double[] aggregates, int offset) {
+    int measureSlots = AGGREGATE_OFFSETS[SIMILARITIES.length];
+    for (int feature = 0; feature < features; ++feature) {
+      for (int measure = 0; measure < MEASURES.length; ++measure) {
+        double value = values[feature * MEASURES.length + measure];
+        for (int i = 0; i < SIMILARITIES.length; ++i) {
+          SIMILARITIES[i].addAggregate(
+              value, aggregates, offset + measure * measureSlots + AGGREGATE_OFFSETS[i]);
+        }
+      }
+    }
+  }
+
+  /** Adds a feature shared by both co-occurrence vectors of the pair */
+  public void addIntersection(double[] values1, int offset1, double[] values2, int offset2) {
+    int measureSlots = INTERSECTION_OFFSETS[SIMILARITIES.length];
+    for (int measure = 0; measure < MEASURES.length; ++measure) {
+      int offset = measure * measureSlots;
+      double value1 = values1[offset1 + measure];
+      double value2 = values2[offset2 + measure];
+      for (int i = 0; i < SIMILARITIES.length; ++i) {
+        SIMILARITIES[i].addIntersection(value1, value2, intersectionSums, offset + INTERSECTION_OFFSETS[i]);
+      }
+    }
+  }
+
+  /**
+   * Adds the features shared by both vectors, found by galloping through the longer vector for
+   * each feature of the shorter one
+   */
+  public void addIntersection(LexemeVectorWritable vector1, LexemeVectorWritable vector2) {
+    boolean firstShorter = vector1.size() <= vector2.size();
+    LexemeVectorWritable shorter = firstShorter ? vector1 : vector2;
+    LexemeVectorWritable longer = firstShorter ? vector2 : vector1;
+    int from = 0;
+    for (int i = 0; i < shorter.size() && from < longer.size(); ++i) {
+      int index = longer.findFeature(shorter.getFeature(i), from);
+      if (index < 0) {
+        from = -index - 1;
+        continue;
+      }
+      int index1 = firstShorter ? i : index;
+      int index2 = firstShorter ? index : i;
+      addIntersection(
+          vector1.getValues(), vector1.getValuesOffset(index1),
+          vector2.getValues(), vector2.getValuesOffset(index2));
+      from = index + 1;
+    }
+  }
+
+  /**
+   * Adds the shared features sums of a part of the pair features, as returned by {@link
+   * #getIntersectionSums()} of another kernel
+   */
+  public void addIntersectionSums(double[] sums) {
+    for (int i = 0; i < INTERSECTION_SIZE; ++i) {
+      intersectionSums[i] += sums[i];
+    }
+  }
+
+  /** The sums of the shared features added since the last {@link #reset()} */
+  public double[] getIntersectionSums() {
+    return intersectionSums;
+  }
+
+  /** Returns the similarity vector of the pair from the aggregates of both vectors and the shared features */
+  public double[] getSimilarityVector(
+      double[] aggregates1, int aggregatesOffset1, double[] aggregates2, int aggregatesOffset2) {
+    int aggregateSlots = AGGREGATE_OFFSETS[SIMILARITIES.length];
+    int intersectionSlots = INTERSECTION_OFFSETS[SIMILARITIES.length];
+    double[] similarityVector = new double[VECTOR_SIZE];
+    for (int measure = 0; measure < MEASURES.length; ++measure) {
+      for (int i = 0; i < SIMILARITIES.length; ++i) {
+        int aggregateOffset = measure * aggregateSlots + AGGREGATE_OFFSETS[i];
+        similarityVector[measure * SIMILARITIES.length + i] =
+            SIMILARITIES[i].getSimilarity(
+                aggregates1, aggregatesOffset1 + aggregateOffset,
+                aggregates2, aggregatesOffset2 + aggregateOffset,
+                intersectionSums, measure * intersectionSlots + INTERSECTION_OFFSETS[i]);
+      }
+    }
+    return similarityVector;
+  }
+}
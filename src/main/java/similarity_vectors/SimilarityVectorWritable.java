@@ -9,7 +9,7 @@ import java.util.Arrays;
 
 public class SimilarityVectorWritable implements WritableComparable<SimilarityVectorWritable> {
 
-    public final static int VECTOR_SIZE = 24;
+    public final static int VECTOR_SIZE = SimilarityKernel.VECTOR_SIZE;
 
     boolean similar;
     double[] similarityVector;
@@ -49,7 +49,7 @@ public class SimilarityVectorWritable implements WritableComparable<SimilarityVe
         for(double vectorPosition : similarityVector) {
             dataOutput.writeDouble(vectorPosition);
         }
-        dataOutput.writeChars(pair);
+        dataOutput.writeUTF(pair);
     }
 
     @Override
@@ -3,14 +3,26 @@ package similarity_vectors;
 import measures_association.*;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.CombineSequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.NLineInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import utils.CombinedInput;
+import utils.RunReport;
+import utils.StageProfiler;
 
 import java.io.IOException;
 import java.net.URI;
@@ -22,8 +34,18 @@ public class SimilarityVectorsRunner {
   private static boolean outputCooccurrenceVectors;
   private static String goldenStandardPath;
   private static final String LOG_PATH = "/log-files/";
+  private static final RunReport runReport = new RunReport("Similarity Vectors"); // Job level metrics of every stage
+  private static Configuration baseConfiguration; // Holds the generic -D options passed to the runner
+
+  public static final String GOLDEN_PAIRS_PER_SPLIT = "goldenPairsPerSplit";
+  private static final int DEFAULT_GOLDEN_PAIRS_PER_SPLIT = 500;
+  public static final String ALL_PAIRS = "allPairsSimilarity"; // Every lexeme pair instead of the golden standard pairs
+  public static final String LSH = "lshSimilarity"; // Candidate lexeme pairs of shared signature bands instead
+  public static final String LSH_RECALL_SAMPLE_RATE = "lshRecallSampleRate"; // 0 skips the recall measurement
 
   public static void main(String[] args) throws IOException, URISyntaxException {
+    baseConfiguration = new Configuration();
+    args = new GenericOptionsParser(baseConfiguration, args).getRemainingArgs();
 
     if (args.length < 4) {
       System.err.println(
@@ -35,17 +57,31 @@ public class SimilarityVectorsRunner {
     outputBucketPath = args[2];
     goldenStandardPath = args[3];
 
-    // Measures of vector similarity
-    Configuration vectorSimilarity = new Configuration();
-    final Job calculateVectorSimilarity =
-        Job.getInstance(vectorSimilarity, "Calculate Measures Of Vector Similarity");
-    String calculateVectorSimilarityPath =
-        createMeasuresOfSimilarityJob(calculateVectorSimilarity, inputMeasuresPath);
-    waitForJobCompletion(calculateVectorSimilarity, calculateVectorSimilarityPath);
+    String resultPath;
+    if (baseConfiguration.getBoolean(LSH, false)) {
+      resultPath = runLshSimilarity();
+    } else if (baseConfiguration.getBoolean(ALL_PAIRS, false)) {
+      String lexemeVectorsPath = runLexemeVectors("Create Lexeme Vectors", "all_lexeme_vectors", 1);
+      resultPath = runAllPairsSimilarity(lexemeVectorsPath, false);
+    } else {
+      // Co-occurrence vectors of the golden standard lexemes
+      Configuration lexemeVectors = new Configuration(baseConfiguration);
+      final Job createLexemeVectors = Job.getInstance(lexemeVectors, "Create Golden Standard Lexeme Vectors");
+      String createLexemeVectorsPath =
+          createLexemeVectorsJob(createLexemeVectors, inputMeasuresPath, false, "lexeme_vectors");
+      waitForJobCompletion(createLexemeVectors, createLexemeVectorsPath);
+
+      // Measures of vector similarity
+      Configuration vectorSimilarity = new Configuration(baseConfiguration);
+      final Job calculateVectorSimilarity =
+          Job.getInstance(vectorSimilarity, "Calculate Measures Of Vector Similarity");
+      resultPath = createMeasuresOfSimilarityJob(calculateVectorSimilarity, createLexemeVectorsPath);
+      waitForJobCompletion(calculateVectorSimilarity, resultPath);
+    }
 
     if(outputCooccurrenceVectors) {
       // Output co-occurrence vectors - Used for testing purposes only
-      Configuration cooccurrenceVectors = new Configuration();
+      Configuration cooccurrenceVectors = new Configuration(baseConfiguration);
       final Job createCooccurrenceVectors =
               Job.getInstance(cooccurrenceVectors, "Create Co-Occurrence Vectors - TESTS");
       String createCooccurrenceVectorsPath =
@@ -54,39 +90,297 @@ public class SimilarityVectorsRunner {
     }
 
     System.out.printf(
-        "\nFinished all jobs successfully: output can be found in s3 path: %s%n",
-        String.format("%s/result", outputBucketPath));
+        "\nFinished all jobs successfully: output can be found in s3 path: %s%n", resultPath);
+  }
+
+  /** Creates the vectors of every lexeme, or of a sample of the lexemes at a rate below 1 */
+  private static String runLexemeVectors(String jobName, String outputName, float sampleRate)
+      throws IOException, URISyntaxException {
+    Configuration lexemeVectors = new Configuration(baseConfiguration);
+    lexemeVectors.setFloat(MeasuresVectorSimilarity.VectorsMapperClass.SAMPLE_RATE, sampleRate);
+    final Job createLexemeVectors = Job.getInstance(lexemeVectors, jobName);
+    String createLexemeVectorsPath =
+        createLexemeVectorsJob(createLexemeVectors, inputMeasuresPath, true, outputName);
+    waitForJobCompletion(createLexemeVectors, createLexemeVectorsPath);
+    return createLexemeVectorsPath;
   }
 
-  private static String setInputOutput(Job job, String inputPath, boolean isResult)
+  /**
+   * Scores every pair of the lexeme vectors sharing a feature, the exact pairs of a lexeme sample
+   * keep the features of any number of lexemes. Returns the similarity vectors path.
+   */
+  private static String runAllPairsSimilarity(String lexemeVectorsPath, boolean sample) throws IOException {
+    String jobSuffix = sample ? " Of Lexeme Sample" : "";
+    String outputPrefix = sample ? "sample_" : "";
+
+    // Partial similarities of the lexeme pairs sharing each feature
+    Configuration featureIndex = new Configuration(baseConfiguration);
+    if (sample) {
+      featureIndex.setInt(AllPairsSimilarity.IndexReducerClass.MAX_FEATURE_LEXEMES, Integer.MAX_VALUE);
+    }
+    final Job indexFeatures = Job.getInstance(featureIndex, "Index Features Partial Similarities" + jobSuffix);
+    String indexFeaturesPath =
+        createFeatureIndexJob(indexFeatures, lexemeVectorsPath, outputPrefix + "feature_pair_partials");
+    waitForJobCompletion(indexFeatures, indexFeaturesPath);
+
+    // Summed partials of each pair joined with the aggregates of its first lexeme
+    Configuration firstAggregates = new Configuration(baseConfiguration);
+    final Job joinFirstAggregates =
+        Job.getInstance(firstAggregates, "Join Pairs With First Lexeme Aggregates" + jobSuffix);
+    String joinFirstAggregatesPath =
+        createFirstAggregatesJob(
+            joinFirstAggregates, indexFeaturesPath, lexemeVectorsPath, outputPrefix + "first_aggregates_pairs");
+    waitForJobCompletion(joinFirstAggregates, joinFirstAggregatesPath);
+
+    // Measures of vector similarity of the pairs above the threshold
+    Configuration pairsSimilarity = new Configuration(baseConfiguration);
+    final Job calculatePairsSimilarity =
+        Job.getInstance(pairsSimilarity, "Calculate Measures Of All Pairs Similarity" + jobSuffix);
+    String calculatePairsSimilarityPath =
+        createAllPairsSimilarityJob(
+            calculatePairsSimilarity, joinFirstAggregatesPath, lexemeVectorsPath, outputPrefix + "all_pairs");
+    waitForJobCompletion(calculatePairsSimilarity, calculatePairsSimilarityPath);
+    return calculatePairsSimilarityPath;
+  }
+
+  /** Scores the candidate pairs of the signature bands, returns the similarity vectors path */
+  private static String runLshSimilarity() throws IOException, URISyntaxException {
+    String lexemeVectorsPath = runLexemeVectors("Create Lexeme Vectors", "all_lexeme_vectors", 1);
+
+    // Candidate pairs of the lexemes sharing a signature band
+    Configuration signatureBands = new Configuration(baseConfiguration);
+    final Job bandSignatures = Job.getInstance(signatureBands, "Band Lexeme Signatures");
+    String bandSignaturesPath = createSignatureBandsJob(bandSignatures, lexemeVectorsPath);
+    waitForJobCompletion(bandSignatures, bandSignaturesPath);
+
+    // Distinct candidates joined with the vector of their first lexeme
+    Configuration firstVectors = new Configuration(baseConfiguration);
+    final Job joinFirstVectors = Job.getInstance(firstVectors, "Join Candidate Pairs With First Lexeme Vectors");
+    String joinFirstVectorsPath = createFirstVectorsJob(joinFirstVectors, bandSignaturesPath, lexemeVectorsPath);
+    waitForJobCompletion(joinFirstVectors, joinFirstVectorsPath);
+
+    // Measures of vector similarity of the candidates above the threshold
+    Configuration candidatesSimilarity = new Configuration(baseConfiguration);
+    final Job calculateCandidatesSimilarity =
+        Job.getInstance(candidatesSimilarity, "Calculate Measures Of Candidate Pairs Similarity");
+    String calculateCandidatesSimilarityPath =
+        createCandidatesSimilarityJob(calculateCandidatesSimilarity, joinFirstVectorsPath, lexemeVectorsPath);
+    waitForJobCompletion(calculateCandidatesSimilarity, calculateCandidatesSimilarityPath);
+
+    float sampleRate = baseConfiguration.getFloat(LSH_RECALL_SAMPLE_RATE, 0);
+    if (sampleRate > 0) {
+      // Recall of the candidates against the exact all pairs similarity of a lexeme sample
+      String sampleVectorsPath =
+          runLexemeVectors("Create Sample Lexeme Vectors", "sample_lexeme_vectors", sampleRate);
+      String exactPairsPath = runAllPairsSimilarity(sampleVectorsPath, true);
+      Configuration recall = new Configuration(baseConfiguration);
+      final Job measureRecall = Job.getInstance(recall, "Measure Candidate Pairs Recall");
+      String measureRecallPath =
+          createRecallJob(measureRecall, exactPairsPath, calculateCandidatesSimilarityPath);
+      waitForJobCompletion(measureRecall, measureRecallPath);
+      printRecall(measureRecall, measureRecallPath);
+    }
+    return calculateCandidatesSimilarityPath;
+  }
+
+  private static String setInputOutput(Job job, String inputPath, String outputName)
       throws IOException {
     if (inputPath != null) {
       FileInputFormat.addInputPath(job, new Path(inputPath));
     }
-    job.setInputFormatClass(SequenceFileInputFormat.class);
-    String outputPath =
-        isResult
-            ? String.format("%s/result", outputBucketPath)
-            : String.format("%s/co-occurrence_vectors", outputBucketPath);
+    CombinedInput.setCombinedInput(job);
+    String outputPath = String.format("%s/%s", outputBucketPath, outputName);
     FileOutputFormat.setOutputPath(job, new Path(outputPath));
     return outputPath;
   }
 
-  private static String createMeasuresOfSimilarityJob(Job job, String filePath)
+  /** The lexeme vectors are looked up by lexeme, all the lexeme vectors are also read in order */
+  private static String createLexemeVectorsJob(Job job, String filePath, boolean allLexemes, String outputName)
       throws URISyntaxException, IOException {
     job.setJarByClass(MeasuresVectorSimilarity.class);
-    job.setMapperClass(MeasuresVectorSimilarity.MapperClass.class);
-    job.setPartitionerClass(MeasuresVectorSimilarity.PartitionerClass.class);
-    job.setReducerClass(MeasuresVectorSimilarity.ReducerClass.class);
-    job.setSortComparatorClass(MeasuresVectorSimilarity.MeasuresVectorSimilarityComparator.class);
-    job.setGroupingComparatorClass(
-        MeasuresVectorSimilarity.MeasuresVectorSimilarityGroupingComparator.class);
-    job.setMapOutputKeyClass(LexemePairWritable.class);
+    job.setMapperClass(MeasuresVectorSimilarity.VectorsMapperClass.class);
+    job.setReducerClass(MeasuresVectorSimilarity.VectorsReducerClass.class);
+    job.setMapOutputKeyClass(Text.class);
     job.setMapOutputValueClass(AssociationMeasuresWritable.class);
     job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(LexemeVectorWritable.class);
+    job.setOutputFormatClass(MapFileOutputFormat.class);
+    SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    SequenceFileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    if (allLexemes) {
+      job.getConfiguration().setBoolean(MeasuresVectorSimilarity.VectorsMapperClass.ALL_LEXEMES, true);
+    } else {
+      job.addCacheFile(new URI(String.format("%s#words", goldenStandardPath)));
+    }
+    return setInputOutput(job, filePath, outputName);
+  }
+
+  /** Inverts the lexeme vectors into a feature index and emits the partials of the pairs of each feature */
+  private static String createFeatureIndexJob(Job job, String lexemeVectorsPath, String outputName)
+      throws IOException {
+    job.setJarByClass(AllPairsSimilarity.class);
+    job.setMapperClass(AllPairsSimilarity.PostingsMapperClass.class);
+    job.setReducerClass(AllPairsSimilarity.IndexReducerClass.class);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(PostingWritable.class);
+    job.setOutputKeyClass(TextPairWritable.class);
+    job.setOutputValueClass(PairPartialWritable.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    SequenceFileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    String outputPath = setInputOutput(job, lexemeVectorsPath, outputName);
+    job.setInputFormatClass(SequenceFileInputFormat.class); // Reads the data file of each map file
+    return outputPath;
+  }
+
+  /** Sums the partials of each pair and joins the aggregates of its first lexeme, keyed by its second lexeme */
+  private static String createFirstAggregatesJob(
+      Job job, String partialsPath, String lexemeVectorsPath, String outputName) throws IOException {
+    job.setJarByClass(AllPairsSimilarity.class);
+    job.setCombinerClass(AllPairsSimilarity.PartialsCombinerClass.class);
+    job.setReducerClass(AllPairsSimilarity.FirstAggregatesReducerClass.class);
+    job.setOutputKeyClass(TextPairWritable.class);
+    job.setOutputValueClass(PairPartialWritable.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    SequenceFileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    return setAggregatesJoin(job, partialsPath, lexemeVectorsPath, outputName);
+  }
+
+  /** Joins the aggregates of the second lexeme of each pair and scores it */
+  private static String createAllPairsSimilarityJob(
+      Job job, String joinedPairsPath, String lexemeVectorsPath, String outputName) throws IOException {
+    job.setJarByClass(AllPairsSimilarity.class);
+    job.setReducerClass(AllPairsSimilarity.PairsReducerClass.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(SimilarityVectorWritable.class);
+    return setAggregatesJoin(job, joinedPairsPath, lexemeVectorsPath, outputName);
+  }
+
+  /**
+   * Reads the pairs and the aggregates of every lexeme vector, the aggregates of a lexeme reach the
+   * reducer ahead of the pairs keyed by the lexeme
+   */
+  private static String setAggregatesJoin(Job job, String pairsPath, String lexemeVectorsPath, String outputName)
+      throws IOException {
+    job.setPartitionerClass(AllPairsSimilarity.FirstLexemePartitionerClass.class);
+    job.setGroupingComparatorClass(AllPairsSimilarity.FirstLexemeGroupingComparator.class);
+    job.setMapOutputKeyClass(TextPairWritable.class);
+    job.setMapOutputValueClass(PairPartialWritable.class);
+    String outputPath = setInputOutput(job, null, outputName);
+    // Set after the combined input format, the data file of each map file is read for the aggregates
+    MultipleInputs.addInputPath(job, new Path(pairsPath), CombineSequenceFileInputFormat.class, Mapper.class);
+    MultipleInputs.addInputPath(
+        job, new Path(lexemeVectorsPath), SequenceFileInputFormat.class, AllPairsSimilarity.AggregatesMapperClass.class);
+    return outputPath;
+  }
+
+  /** Buckets the lexemes by the bands of their signatures and emits the pairs of each bucket */
+  private static String createSignatureBandsJob(Job job, String lexemeVectorsPath) throws IOException {
+    job.setJarByClass(LshCandidates.class);
+    job.setMapperClass(LshCandidates.SignatureMapperClass.class);
+    job.setReducerClass(LshCandidates.BucketReducerClass.class);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(Text.class);
+    job.setOutputKeyClass(TextPairWritable.class);
+    job.setOutputValueClass(NullWritable.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    SequenceFileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    String outputPath = setInputOutput(job, lexemeVectorsPath, "lsh_candidates");
+    job.setInputFormatClass(SequenceFileInputFormat.class); // Reads the data file of each map file
+    return outputPath;
+  }
+
+  /** Joins each distinct candidate with the vector of its first lexeme, keyed by its second lexeme */
+  private static String createFirstVectorsJob(Job job, String candidatesPath, String lexemeVectorsPath)
+      throws IOException {
+    job.setJarByClass(LshCandidates.class);
+    job.setCombinerClass(LshCandidates.DistinctCombinerClass.class); // A pair of several buckets is joined once
+    job.setReducerClass(LshCandidates.FirstVectorsReducerClass.class);
+    job.setOutputKeyClass(TextPairWritable.class);
+    job.setOutputValueClass(LexemeVectorWritable.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    SequenceFileOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
+    return setVectorsJoin(
+        job, candidatesPath, LshCandidates.CandidatesMapperClass.class, lexemeVectorsPath, "lsh_first_vectors_pairs");
+  }
+
+  /** Joins the vector of the second lexeme of each candidate and scores it */
+  private static String createCandidatesSimilarityJob(Job job, String joinedPairsPath, String lexemeVectorsPath)
+      throws IOException {
+    job.setJarByClass(LshCandidates.class);
+    job.setReducerClass(LshCandidates.CandidatesReducerClass.class);
+    job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(SimilarityVectorWritable.class);
+    return setVectorsJoin(job, joinedPairsPath, Mapper.class, lexemeVectorsPath, "lsh_pairs");
+  }
+
+  /**
+   * Reads the pairs and every lexeme vector, the vector of a lexeme reaches the reducer ahead of the
+   * pairs keyed by the lexeme
+   */
+  @SuppressWarnings("rawtypes") // MultipleInputs takes the raw mapper class
+  private static String setVectorsJoin(
+      Job job, String pairsPath, Class<? extends Mapper> pairsMapper, String lexemeVectorsPath, String outputName)
+      throws IOException {
+    job.setPartitionerClass(AllPairsSimilarity.FirstLexemePartitionerClass.class);
+    job.setGroupingComparatorClass(AllPairsSimilarity.FirstLexemeGroupingComparator.class);
+    job.setMapOutputKeyClass(TextPairWritable.class);
+    job.setMapOutputValueClass(LexemeVectorWritable.class);
+    String outputPath = setInputOutput(job, null, outputName);
+    // Set after the combined input format, the data file of each map file is read for the vectors
+    MultipleInputs.addInputPath(job, new Path(pairsPath), CombineSequenceFileInputFormat.class, pairsMapper);
+    MultipleInputs.addInputPath(
+        job, new Path(lexemeVectorsPath), SequenceFileInputFormat.class, LshCandidates.VectorsMapperClass.class);
+    return outputPath;
+  }
+
+  /** Joins the exact pairs of the lexeme sample with the scored candidates, writes the missed pairs */
+  private static String createRecallJob(Job job, String exactPairsPath, String candidatePairsPath)
+      throws IOException {
+    job.setJarByClass(LshCandidates.class);
+    job.setReducerClass(LshCandidates.RecallReducerClass.class);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(BooleanWritable.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(NullWritable.class);
+    String outputPath = setInputOutput(job, null, "lsh_missed_pairs");
+    // Both inputs are text similarity vectors keyed by the pair, set after the combined input format
+    MultipleInputs.addInputPath(
+        job, new Path(exactPairsPath), KeyValueTextInputFormat.class, LshCandidates.ExactPairsMapperClass.class);
+    MultipleInputs.addInputPath(
+        job, new Path(candidatePairsPath), KeyValueTextInputFormat.class, LshCandidates.CandidatePairsMapperClass.class);
+    return outputPath;
+  }
+
+  /** The recall counters are kept in the run report as well */
+  private static void printRecall(Job job, String missedPairsPath) throws IOException {
+    long exactPairs = job.getCounters().findCounter(CounterTypes.LSH_EXACT_PAIRS).getValue();
+    long recalledPairs = job.getCounters().findCounter(CounterTypes.LSH_RECALLED_PAIRS).getValue();
+    System.out.printf(
+        "Candidate pairs recall on the lexeme sample: %d of %d exact pairs (%.4f), missed pairs in %s.%n",
+        recalledPairs, exactPairs, exactPairs == 0 ? 1.0 : (double) recalledPairs / exactPairs, missedPairsPath);
+  }
+
+  /** Map only job over the golden standard pairs, each pair looks both lexeme vectors up */
+  private static String createMeasuresOfSimilarityJob(Job job, String lexemeVectorsPath)
+      throws URISyntaxException, IOException {
+    job.setJarByClass(MeasuresVectorSimilarity.class);
+    job.setMapperClass(MeasuresVectorSimilarity.MapperClass.class);
+    job.setNumReduceTasks(0);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(SimilarityVectorWritable.class);
+    job.getConfiguration().set(MeasuresVectorSimilarity.MapperClass.LEXEME_VECTORS_PATH, lexemeVectorsPath);
     job.addCacheFile(new URI(String.format("%s#words", goldenStandardPath)));
-    return setInputOutput(job, filePath, true);
+    job.setInputFormatClass(NLineInputFormat.class);
+    NLineInputFormat.addInputPath(job, new Path(goldenStandardPath));
+    NLineInputFormat.setNumLinesPerSplit(
+        job, job.getConfiguration().getInt(GOLDEN_PAIRS_PER_SPLIT, DEFAULT_GOLDEN_PAIRS_PER_SPLIT));
+    String outputPath = String.format("%s/result", outputBucketPath);
+    FileOutputFormat.setOutputPath(job, new Path(outputPath));
+    return outputPath;
   }
 
   private static String createCooccurrenceVectorsJob(Job job, String filePath)
@@ -103,16 +397,21 @@ public class SimilarityVectorsRunner {
     job.setOutputKeyClass(TextPairWritable.class);
     job.setOutputValueClass(Text.class);
     job.addCacheFile(new URI(String.format("%s#words", goldenStandardPath)));
-    return setInputOutput(job, filePath, false);
+    return setInputOutput(job, filePath, "co-occurrence_vectors");
   }
 
   private static void waitForJobCompletion(final Job job, String outputPath) {
     String description = job.getJobName();
     System.out.printf("Started %s job.%n", description);
     try {
-      if (job.waitForCompletion(true)) {
+      boolean successful = job.waitForCompletion(true);
+      runReport.addStage(job, outputPath, successful);
+      writeRunReport();
+      if (successful) {
         System.out.printf(
             "%s finished successfully, output in S3 bucket %s.%n", description, outputPath);
+        StageProfiler.writeReport(
+            job, outputPath, String.format("%s/profile/%s.json", outputBucketPath, description));
       } else {
         System.out.printf("%s failed!, logs in S3 bucket at %s.%n", description, LOG_PATH);
         System.exit(1);
@@ -123,4 +422,9 @@ public class SimilarityVectorsRunner {
       System.exit(1);
     }
   }
+
+  /** Rewrites the run report next to the result directory, which is read as a whole by the next step */
+  private static void writeRunReport() {
+    runReport.write(baseConfiguration, String.format("%s/run-report.json", outputBucketPath));
+  }
 }
@@ -0,0 +1,185 @@
+package similarity_vectors;
+
+/**
+ * Similarity of two co-occurrence vectors, computed from aggregates of each vector and a pass over
+ * the features they share only. Each measure keeps its sums in slots of primitive arrays owned by
+ * the {@link SimilarityKernel}, a feature missing from a vector has the value 0.
+ */
+public interface VectorSimilarity {
+
+  /** Suffix of the similarity vector attributes of the measure */
+  String getName();
+
+  /** Number of sums the measure aggregates over the features of a single vector */
+  int getAggregateSlots();
+
+  /** Adds a feature to the aggregates of its vector */
+  void addAggregate(double value, double[] aggregates, int offset);
+
+  /** Number of sums the measure keeps over the features shared by both vectors */
+  int getIntersectionSlots();
+
+  /** Adds a feature present in both vectors, a correction of the aggregates of both vectors */
+  void addIntersection(double value1, double value2, double[] sums, int offset);
+
+  /** Returns the similarity of the vectors from their aggregates and their shared features sums */
+  double getSimilarity(
+      double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset);
+
+  /** The measures computed for every association measure, in their output order */
+  enum Standard implements VectorSimilarity {
+    // sum(abs(l1[i] - l2[i]))
+    MANHATTAN("manhattan_distance") {
+      // sum(l1[i]) + sum(l2[i]) - 2 * sum(min(l1[i], l2[i]))
+      @Override
+      public void addAggregate(double value, double[] aggregates, int offset) {
+        aggregates[offset] += value;
+      }
+
+      @Override
+      public void addIntersection(double value1, double value2, double[] sums, int offset) {
+        sums[offset] += Math.abs(value1 - value2) - value1 - value2;
+      }
+
+      @Override
+      public double getSimilarity(
+          double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset) {
+        return aggregates1[offset1] + aggregates2[offset2] + sums[offset];
+      }
+    },
+    // sqrt(sum((l1[i] - l2[i])^2))
+    EUCLIDEAN("euclidean_distance") {
+      // sqrt(sum(l1[i]^2) + sum(l2[i]^2) - 2 * sum(l1[i] * l2[i]))
+      @Override
+      public void addAggregate(double value, double[] aggregates, int offset) {
+        aggregates[offset] += Math.pow(value, 2);
+      }
+
+      @Override
+      public void addIntersection(double value1, double value2, double[] sums, int offset) {
+        sums[offset] -= 2 * value1 * value2;
+      }
+
+      @Override
+      public double getSimilarity(
+          double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset) {
+        // Rounding may take near identical vectors below 0
+        return Math.sqrt(Math.max(0, aggregates1[offset1] + aggregates2[offset2] + sums[offset]));
+      }
+    },
+    // sum(l1[i] * l2[i]) / (sqrt(sum(l1[i]^2)) * sqrt(sum(l2[i]^2)))
+    COSINE("cosine_distance") {
+      @Override
+      public void addAggregate(double value, double[] aggregates, int offset) {
+        aggregates[offset] += Math.pow(value, 2);
+      }
+
+      @Override
+      public void addIntersection(double value1, double value2, double[] sums, int offset) {
+        sums[offset] += (value1 * value2);
+      }
+
+      @Override
+      public double getSimilarity(
+          double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset) {
+        return (sums[offset] / (Math.sqrt(aggregates1[offset1]) * Math.sqrt(aggregates2[offset2])));
+      }
+    },
+    // sum(min(l1[i], l2[i])) / sum(max(l1[i], l2[i]))
+    JACCARD("jaccard_measure") {
+      // sum(min(l1[i], l2[i])) / (sum(l1[i]) + sum(l2[i]) - sum(min(l1[i], l2[i])))
+      @Override
+      public void addAggregate(double value, double[] aggregates, int offset) {
+        aggregates[offset] += value;
+      }
+
+      @Override
+      public void addIntersection(double value1, double value2, double[] sums, int offset) {
+        sums[offset] += Math.min(value1, value2);
+      }
+
+      @Override
+      public double getSimilarity(
+          double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset) {
+        return (sums[offset] / (aggregates1[offset1] + aggregates2[offset2] - sums[offset]));
+      }
+    },
+    // (2 * sum(min(l1[i], l2[i]))) / sum(l1[i] + l2[i])
+    DICE("dice_measure") {
+      // (2 * sum(min(l1[i], l2[i]))) / (sum(l1[i]) + sum(l2[i]))
+      @Override
+      public void addAggregate(double value, double[] aggregates, int offset) {
+        aggregates[offset] += value;
+      }
+
+      @Override
+      public void addIntersection(double value1, double value2, double[] sums, int offset) {
+        sums[offset] += Math.min(value1, value2);
+      }
+
+      @Override
+      public double getSimilarity(
+          double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset) {
+        return ((2 * sums[offset]) / (aggregates1[offset1] + aggregates2[offset2]));
+      }
+    },
+    // sum(l1[i] * log(l1[i] / ((l1[i] + l2[i]) / 2))) + sum(l2[i] * log(l2[i] / ((l1[i] + l2[i]) / 2)))
+    JENSEN_SHANNON("jensen_shannon_divergence") {
+      /** Kullback-Leibler term of the value against the mean of both values, a NaN logarithm adds 0 */
+      private double kullbackLeibler(double value, double other) {
+        return Double.isNaN(Math.log((value / ((value + other) / 2))))
+            ? 0
+            : (value * Math.log((value / ((value + other) / 2))));
+      }
+
+      // A feature of one vector adds its self term l[i] * log(l[i] / (l[i] / 2)), the shared features
+      // replace the self terms of both values with their Kullback-Leibler terms
+      @Override
+      public void addAggregate(double value, double[] aggregates, int offset) {
+        aggregates[offset] += selfTerm(value);
+      }
+
+      /** Kullback-Leibler term of a value against half itself, a NaN logarithm of a 0 value adds 0 */
+      private double selfTerm(double value) {
+        return Double.isNaN(Math.log((value / (value / 2))))
+            ? 0
+            : (value * Math.log((value / (value / 2))));
+      }
+
+      @Override
+      public void addIntersection(double value1, double value2, double[] sums, int offset) {
+        sums[offset] +=
+            kullbackLeibler(value1, value2) + kullbackLeibler(value2, value1)
+                - selfTerm(value1) - selfTerm(value2);
+      }
+
+      @Override
+      public double getSimilarity(
+          double[] aggregates1, int offset1, double[] aggregates2, int offset2, double[] sums, int offset) {
+        return aggregates1[offset1] + aggregates2[offset2] + sums[offset];
+      }
+    };
+
+    private final String name;
+
+    Standard(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    /** Every standard measure is a single sum of each vector and a single sum of the shared features */
+    @Override
+    public int getAggregateSlots() {
+      return 1;
+    }
+
+    @Override
+    public int getIntersectionSlots() {
+      return 1;
+    }
+  }
+}
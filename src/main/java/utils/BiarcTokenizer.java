@@ -0,0 +1,184 @@
+package utils;
+
+import org.apache.hadoop.io.Text;
+
+import java.util.Arrays;
+
+/**
+ * Scans a syntactic biarcs line in place over the UTF-8 bytes of the given {@link Text}.
+ *
+ * <p>Line shape: head_word<TAB>syntactic-ngram<TAB>total_count<TAB>counts_by_year where the
+ * syntactic-ngram is a space separated list of <word/pos-tag/dep-label/head-index> tokens.
+ *
+ * <p>Token boundaries follow the {@code String.split} rules used by the original parser so token
+ * indexes (and therefore head indexes) stay the same: empty tokens between two spaces are kept,
+ * trailing empty tokens are dropped and a token is an arc only if it has exactly 4 '/' separated
+ * parts once trailing empty parts are dropped.
+ */
+public class BiarcTokenizer {
+
+  private static final int INITIAL_TOKENS = 8;
+
+  private byte[] bytes;
+  private long totalCount;
+  private int tokenCount;
+
+  private int[] wordStart = new int[INITIAL_TOKENS];
+  private int[] wordEnd = new int[INITIAL_TOKENS];
+  private int[] tokenEnd = new int[INITIAL_TOKENS];
+  private int[] dependencyStart = new int[INITIAL_TOKENS];
+  private int[] dependencyEnd = new int[INITIAL_TOKENS];
+  private int[] headIndex = new int[INITIAL_TOKENS];
+  private boolean[] arc = new boolean[INITIAL_TOKENS];
+
+  /**
+   * Tokenize the given line, the tokenizer keeps a reference to the line bytes until the next call.
+   *
+   * @return false if the line does not contain a syntactic-ngram and a total_count field
+   */
+  public boolean tokenize(Text line) {
+    bytes = line.getBytes();
+    int length = line.getLength();
+    tokenCount = 0;
+
+    int ngramStart = indexOf(bytes, 0, length, (byte) '\t') + 1;
+    if (ngramStart == 0) return false;
+    int ngramEnd = indexOf(bytes, ngramStart, length, (byte) '\t');
+    if (ngramEnd < 0) return false;
+    int countEnd = indexOf(bytes, ngramEnd + 1, length, (byte) '\t');
+    if (!parseTotalCount(ngramEnd + 1, countEnd < 0 ? length : countEnd)) return false;
+
+    int tokenStart = ngramStart;
+    for (int i = ngramStart; i <= ngramEnd; ++i) {
+      if (i == ngramEnd || bytes[i] == ' ') {
+        addToken(tokenStart, i);
+        tokenStart = i + 1;
+      }
+    }
+    // String.split drops trailing empty tokens
+    while (tokenCount > 0 && tokenEnd[tokenCount - 1] == wordStart[tokenCount - 1]) {
+      --tokenCount;
+    }
+    return true;
+  }
+
+  private void addToken(int start, int end) {
+    ensureCapacity(tokenCount + 1);
+    int token = tokenCount++;
+
+    int firstSlash = indexOf(bytes, start, end, (byte) '/');
+    wordStart[token] = start;
+    wordEnd[token] = firstSlash < 0 ? end : firstSlash;
+    tokenEnd[token] = end;
+    arc[token] = false;
+
+    // Drop trailing empty parts
+    int partsEnd = end;
+    while (partsEnd > start && bytes[partsEnd - 1] == '/') --partsEnd;
+
+    int slashCount = 0;
+    int secondSlash = -1;
+    int thirdSlash = -1;
+    for (int i = start; i < partsEnd; ++i) {
+      if (bytes[i] == '/') {
+        ++slashCount;
+        if (slashCount == 2) secondSlash = i;
+        else if (slashCount == 3) thirdSlash = i;
+      }
+    }
+    if (slashCount == 3) {
+      int head = parseInt(thirdSlash + 1, partsEnd);
+      if (head != Integer.MIN_VALUE) {
+        arc[token] = true;
+        dependencyStart[token] = secondSlash + 1;
+        dependencyEnd[token] = thirdSlash;
+        headIndex[token] = head - 1;
+      }
+    }
+  }
+
+  private boolean parseTotalCount(int start, int end) {
+    if (start >= end) return false;
+    long value = 0;
+    for (int i = start; i < end; ++i) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) return false;
+      value = value * 10 + digit;
+    }
+    totalCount = value;
+    return true;
+  }
+
+  /** Same accepted syntax as {@link Integer#parseInt(String)} for ASCII input, MIN_VALUE when malformed. */
+  private int parseInt(int start, int end) {
+    if (start >= end) return Integer.MIN_VALUE;
+    boolean negative = bytes[start] == '-';
+    if (negative || bytes[start] == '+') ++start;
+    if (start >= end || end - start > 9) return Integer.MIN_VALUE;
+    int value = 0;
+    for (int i = start; i < end; ++i) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) return Integer.MIN_VALUE;
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > wordStart.length) {
+      int newLength = Math.max(capacity, wordStart.length * 2);
+      wordStart = Arrays.copyOf(wordStart, newLength);
+      wordEnd = Arrays.copyOf(wordEnd, newLength);
+      tokenEnd = Arrays.copyOf(tokenEnd, newLength);
+      dependencyStart = Arrays.copyOf(dependencyStart, newLength);
+      dependencyEnd = Arrays.copyOf(dependencyEnd, newLength);
+      headIndex = Arrays.copyOf(headIndex, newLength);
+      arc = Arrays.copyOf(arc, newLength);
+    }
+  }
+
+  private static int indexOf(byte[] bytes, int from, int to, byte b) {
+    for (int i = from; i < to; ++i) {
+      if (bytes[i] == b) return i;
+    }
+    return -1;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public int size() {
+    return tokenCount;
+  }
+
+  /** True if the token has the <word/pos-tag/dep-label/head-index> shape */
+  public boolean isArc(int token) {
+    return arc[token];
+  }
+
+  /** Zero based head token index, negative for the root of the ngram */
+  public int getHeadIndex(int token) {
+    return headIndex[token];
+  }
+
+  public int getWordStart(int token) {
+    return wordStart[token];
+  }
+
+  public int getWordLength(int token) {
+    return wordEnd[token] - wordStart[token];
+  }
+
+  public int getDependencyStart(int token) {
+    return dependencyStart[token];
+  }
+
+  public int getDependencyLength(int token) {
+    return dependencyEnd[token] - dependencyStart[token];
+  }
+}
@@ -0,0 +1,143 @@
+package utils;
+
+import org.apache.hadoop.io.WritableComparator;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from a byte string key to a primitive long count.
+ *
+ * <p>Keys are copied into one shared byte arena and entries are kept in insertion order, so adding
+ * to an existing key allocates nothing and the whole table is reused after {@link #clear()}.
+ */
+public class ByteKeyCountTable {
+
+  private static final int INITIAL_ENTRIES = 1 << 10;
+  // Offset, length and hash ints, the long count and two slots at the maximal load factor
+  private static final int ENTRY_BYTES = 3 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+  private byte[] arena = new byte[INITIAL_ENTRIES * 16];
+  private int arenaSize;
+
+  private int[] keyOffsets = new int[INITIAL_ENTRIES];
+  private int[] keyLengths = new int[INITIAL_ENTRIES];
+  private int[] hashes = new int[INITIAL_ENTRIES];
+  private long[] counts = new long[INITIAL_ENTRIES];
+  private int size;
+
+  private int[] slots = new int[INITIAL_ENTRIES * 2]; // entry index + 1, 0 for an empty slot
+  private int slotMask = slots.length - 1;
+
+  /** Adds the given amount to the count of the key, inserting the key if it is missing */
+  public void add(byte[] bytes, int offset, int length, long amount) {
+    int hash = WritableComparator.hashBytes(bytes, offset, length);
+    int slot = findSlot(bytes, offset, length, hash);
+    if (slots[slot] != 0) {
+      counts[slots[slot] - 1] += amount;
+      return;
+    }
+    int entry = size++;
+    ensureEntryCapacity(size);
+    ensureArenaCapacity(arenaSize + length);
+    System.arraycopy(bytes, offset, arena, arenaSize, length);
+    keyOffsets[entry] = arenaSize;
+    keyLengths[entry] = length;
+    hashes[entry] = hash;
+    counts[entry] = amount;
+    arenaSize += length;
+    slots[slot] = entry + 1;
+    if (size * 2 > slots.length) rehash();
+  }
+
+  /** Returns the count of the key or -1 if the key is missing */
+  public long get(byte[] bytes, int offset, int length) {
+    int slot = findSlot(bytes, offset, length, WritableComparator.hashBytes(bytes, offset, length));
+    return slots[slot] != 0 ? counts[slots[slot] - 1] : -1;
+  }
+
+  private int findSlot(byte[] bytes, int offset, int length, int hash) {
+    int slot = mix(hash) & slotMask;
+    while (slots[slot] != 0) {
+      int entry = slots[slot] - 1;
+      if (hashes[entry] == hash
+          && WritableComparator.compareBytes(
+                  arena, keyOffsets[entry], keyLengths[entry], bytes, offset, length)
+              == 0) {
+        return slot;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    slotMask = slots.length - 1;
+    for (int entry = 0; entry < size; ++entry) {
+      int slot = mix(hashes[entry]) & slotMask;
+      while (slots[slot] != 0) slot = (slot + 1) & slotMask;
+      slots[slot] = entry + 1;
+    }
+  }
+
+  private void ensureEntryCapacity(int capacity) {
+    if (capacity > counts.length) {
+      int newLength = counts.length * 2;
+      keyOffsets = Arrays.copyOf(keyOffsets, newLength);
+      keyLengths = Arrays.copyOf(keyLengths, newLength);
+      hashes = Arrays.copyOf(hashes, newLength);
+      counts = Arrays.copyOf(counts, newLength);
+    }
+  }
+
+  private void ensureArenaCapacity(int capacity) {
+    if (capacity > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(capacity, arena.length * 2));
+    }
+  }
+
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  /** Removes all the entries while keeping the allocated arrays */
+  public void clear() {
+    Arrays.fill(slots, 0);
+    size = 0;
+    arenaSize = 0;
+  }
+
+  /**
+   * Estimated heap bytes of a table holding the given entries and key bytes once it is filled, the
+   * entry arrays and the key arena may be up to twice their content after doubling
+   */
+  public static long estimateMemoryBytes(long entries, long keyBytes) {
+    return 2 * (keyBytes + entries * ENTRY_BYTES) + (long) INITIAL_ENTRIES * 16;
+  }
+
+  /** Estimated heap bytes used by the current entries */
+  public long getMemoryBytes() {
+    return (long) arenaSize + (long) size * ENTRY_BYTES;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public byte[] getArena() {
+    return arena;
+  }
+
+  public int getKeyOffset(int entry) {
+    return keyOffsets[entry];
+  }
+
+  public int getKeyLength(int entry) {
+    return keyLengths[entry];
+  }
+
+  public long getCount(int entry) {
+    return counts[entry];
+  }
+}
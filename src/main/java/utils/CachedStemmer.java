@@ -0,0 +1,213 @@
+package utils;
+
+import opennlp.tools.stemmer.PorterStemmer;
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Porter stemmer with a bounded memoizing cache from the raw lowercase token to its stem.
+ *
+ * <p>The corpus vocabulary is Zipfian so most stem calls are repeats. Lookups hash and compare the
+ * token chars in place, only a cache miss allocates (the cached key and the stem).
+ */
+public class CachedStemmer {
+
+  public static final String CAPACITY = "stemCacheCapacity";
+  public static final String EVICTION = "stemCacheEviction";
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  public enum EvictionPolicy {
+    CLOCK, // second chance, entries hit since the last sweep are kept
+    LRU,
+    FIFO
+  }
+
+  private static final int NONE = -1;
+
+  private final PorterStemmer stemmer;
+  private final EvictionPolicy policy;
+  private final int capacity;
+
+  private final int[] buckets;
+  private final int bucketMask;
+  private final int[] nextInBucket;
+  private final int[] hashes;
+  private final char[][] keys;
+  private final String[] stems;
+
+  private final boolean[] referenced; // CLOCK
+  private final int[] previous; // LRU, most recent entry at head
+  private final int[] next;
+  private int head = NONE;
+  private int tail = NONE;
+
+  private int size;
+  private int hand;
+  private char[] buffer = new char[32];
+
+  private long hits;
+  private long misses;
+
+  public CachedStemmer(int capacity, EvictionPolicy policy) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Stem cache capacity must be positive: " + capacity);
+    }
+    this.stemmer = new PorterStemmer();
+    this.policy = policy;
+    this.capacity = capacity;
+    int bucketCount = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+    this.buckets = new int[bucketCount];
+    this.bucketMask = bucketCount - 1;
+    Arrays.fill(buckets, NONE);
+    this.nextInBucket = new int[capacity];
+    this.hashes = new int[capacity];
+    this.keys = new char[capacity][];
+    this.stems = new String[capacity];
+    this.referenced = policy == EvictionPolicy.CLOCK ? new boolean[capacity] : null;
+    this.previous = policy == EvictionPolicy.LRU ? new int[capacity] : null;
+    this.next = policy == EvictionPolicy.LRU ? new int[capacity] : null;
+  }
+
+  /** Creates a stemmer sized by the {@link #CAPACITY} and {@link #EVICTION} job configuration values */
+  public static CachedStemmer create(Configuration conf) {
+    return new CachedStemmer(
+        conf.getInt(CAPACITY, DEFAULT_CAPACITY),
+        EvictionPolicy.valueOf(
+            conf.get(EVICTION, EvictionPolicy.CLOCK.name()).toUpperCase(Locale.ROOT)));
+  }
+
+  public String stem(String word) {
+    int length = word.length();
+    if (length > buffer.length) buffer = new char[Math.max(length, buffer.length * 2)];
+    word.getChars(0, length, buffer, 0);
+    return stem(buffer, length);
+  }
+
+  /** Stem of the first length chars of the given buffer, the buffer is not kept by the cache */
+  public String stem(char[] word, int length) {
+    int hash = hash(word, length);
+    for (int entry = buckets[hash & bucketMask]; entry != NONE; entry = nextInBucket[entry]) {
+      if (hashes[entry] == hash && equals(keys[entry], word, length)) {
+        ++hits;
+        touch(entry);
+        return stems[entry];
+      }
+    }
+    ++misses;
+    String stem = stemmer.stem(new String(word, 0, length));
+    insert(hash, Arrays.copyOf(word, length), stem);
+    return stem;
+  }
+
+  private void insert(int hash, char[] key, String stem) {
+    int entry;
+    if (size < capacity) {
+      entry = size++;
+    } else {
+      entry = selectVictim();
+      unlinkFromBucket(entry);
+    }
+    hashes[entry] = hash;
+    keys[entry] = key;
+    stems[entry] = stem;
+    int bucket = hash & bucketMask;
+    nextInBucket[entry] = buckets[bucket];
+    buckets[bucket] = entry;
+
+    switch (policy) {
+      case CLOCK:
+        referenced[entry] = false;
+        break;
+      case LRU: // an evicted entry was already unlinked when selected
+        pushFront(entry);
+        break;
+      case FIFO:
+        break;
+    }
+  }
+
+  private int selectVictim() {
+    switch (policy) {
+      case CLOCK:
+        while (referenced[hand]) {
+          referenced[hand] = false;
+          hand = (hand + 1) % capacity;
+        }
+        int clockVictim = hand;
+        hand = (hand + 1) % capacity;
+        return clockVictim;
+      case LRU:
+        int lruVictim = tail;
+        unlinkFromList(lruVictim);
+        return lruVictim;
+      default: // FIFO, entries are replaced in insertion order
+        int fifoVictim = hand;
+        hand = (hand + 1) % capacity;
+        return fifoVictim;
+    }
+  }
+
+  private void touch(int entry) {
+    if (policy == EvictionPolicy.CLOCK) {
+      referenced[entry] = true;
+    } else if (policy == EvictionPolicy.LRU && entry != head) {
+      unlinkFromList(entry);
+      pushFront(entry);
+    }
+  }
+
+  private void unlinkFromBucket(int entry) {
+    int bucket = hashes[entry] & bucketMask;
+    if (buckets[bucket] == entry) {
+      buckets[bucket] = nextInBucket[entry];
+      return;
+    }
+    for (int current = buckets[bucket]; current != NONE; current = nextInBucket[current]) {
+      if (nextInBucket[current] == entry) {
+        nextInBucket[current] = nextInBucket[entry];
+        return;
+      }
+    }
+  }
+
+  private void pushFront(int entry) {
+    previous[entry] = NONE;
+    next[entry] = head;
+    if (head != NONE) previous[head] = entry;
+    head = entry;
+    if (tail == NONE) tail = entry;
+  }
+
+  private void unlinkFromList(int entry) {
+    if (previous[entry] != NONE) next[previous[entry]] = next[entry];
+    else head = next[entry];
+    if (next[entry] != NONE) previous[next[entry]] = previous[entry];
+    else tail = previous[entry];
+  }
+
+  private static int hash(char[] word, int length) {
+    int hash = 0;
+    for (int i = 0; i < length; ++i) {
+      hash = 31 * hash + word[i];
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean equals(char[] key, char[] word, int length) {
+    if (key.length != length) return false;
+    for (int i = 0; i < length; ++i) {
+      if (key[i] != word[i]) return false;
+    }
+    return true;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+}
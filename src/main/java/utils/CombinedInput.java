@@ -0,0 +1,25 @@
+package utils;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.CombineSequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * Combined input splits of the stages reading sequence files, so the mapper count follows the data
+ * volume rather than the reducer count of the previous stage
+ */
+public class CombinedInput {
+
+  public static final String MAX_SPLIT_MB = "maxSplitMB"; // Target size of the combined input splits
+  public static final long DEFAULT_MAX_SPLIT_MB = 128;
+
+  /**
+   * Reads the input sequence files through combined splits of up to the max split size, small part
+   * files share a mapper and large files are still split at their block boundaries
+   */
+  public static void setCombinedInput(Job job) {
+    job.setInputFormatClass(CombineSequenceFileInputFormat.class);
+    long maxSplitMB = job.getConfiguration().getLong(MAX_SPLIT_MB, DEFAULT_MAX_SPLIT_MB);
+    FileInputFormat.setMaxInputSplitSize(job, maxSplitMB * 1024 * 1024);
+  }
+}
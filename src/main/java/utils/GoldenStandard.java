@@ -0,0 +1,32 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/** Golden standard word pairs file (word1<TAB>word2<TAB>is-similar) shared through the distributed cache */
+public class GoldenStandard {
+
+  // Symlink name of the golden standard file in the task working directory
+  public static final String LOCAL_NAME = "words";
+
+  /**
+   * Returns the stemmed lowercase lexemes of both words of every golden standard pair, a missing or
+   * unreadable file fails the task instead of filtering out every lexeme.
+   */
+  public static Set<String> loadStemmedLexemes(String path, CachedStemmer stemmer) throws IOException {
+    Set<String> lexemes = new HashSet<>();
+    try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        String[] lineParts = line.split("\t");
+        lexemes.add(stemmer.stem(lineParts[0]).toLowerCase(Locale.ROOT));
+        lexemes.add(stemmer.stem(lineParts[1]).toLowerCase(Locale.ROOT));
+      }
+    }
+    return lexemes;
+  }
+}
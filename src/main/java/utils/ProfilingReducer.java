@@ -0,0 +1,147 @@
+package utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.ReduceContext;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Reducer that profiles its partition when stage profiling is enabled: the number of groups and
+ * records, the shuffled bytes and the heaviest keys by record count are written to a hidden side
+ * file of the job output, merged into a report by {@link StageProfiler} once the job is done.
+ * Combiner runs are never profiled.
+ */
+public abstract class ProfilingReducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
+    extends Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT> {
+
+  public static final String ENABLED = "profileStages";
+  public static final String TOP_KEYS = "profileTopKeys";
+  static final String SIDE_FILE_PREFIX = "_profile-r-";
+  static final int DEFAULT_TOP_KEYS = 20;
+
+  /** Record count of a reduce group, ordered by the count */
+  static class KeyProfile implements Comparable<KeyProfile> {
+    final String key;
+    long records;
+
+    KeyProfile(String key, long records) {
+      this.key = key;
+      this.records = records;
+    }
+
+    @Override
+    public int compareTo(KeyProfile other) {
+      return Long.compare(records, other.records);
+    }
+  }
+
+  /** Counts the values the reducer consumes from a group */
+  private class CountingValues implements Iterable<VALUEIN>, Iterator<VALUEIN> {
+    private Iterator<VALUEIN> values;
+    private long count;
+
+    void reset(Iterable<VALUEIN> values) {
+      this.values = values.iterator();
+      this.count = 0;
+    }
+
+    /** Skips the values left in the group and returns the group size */
+    long drain() {
+      while (values.hasNext()) {
+        next();
+      }
+      return count;
+    }
+
+    @Override
+    public Iterator<VALUEIN> iterator() {
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return values.hasNext();
+    }
+
+    @Override
+    public VALUEIN next() {
+      ++count;
+      return values.next();
+    }
+  }
+
+  @Override
+  public void run(Context context) throws IOException, InterruptedException {
+    Configuration conf = context.getConfiguration();
+    if (!conf.getBoolean(ENABLED, false)
+        || context.getTaskAttemptID().getTaskType() != TaskType.REDUCE) {
+      super.run(context);
+      return;
+    }
+    int topKeys = conf.getInt(TOP_KEYS, DEFAULT_TOP_KEYS);
+    PriorityQueue<KeyProfile> heaviestKeys = new PriorityQueue<>(); // Lightest of the heaviest first
+    CountingValues values = new CountingValues();
+    long groups = 0;
+    long records = 0;
+
+    setup(context);
+    try {
+      while (context.nextKey()) {
+        values.reset(context.getValues());
+        reduce(context.getCurrentKey(), values, context);
+        long groupRecords = values.drain();
+        ++groups;
+        records += groupRecords;
+        if (heaviestKeys.size() < topKeys) {
+          heaviestKeys.add(new KeyProfile(context.getCurrentKey().toString(), groupRecords));
+        } else if (topKeys > 0 && groupRecords > heaviestKeys.peek().records) {
+          heaviestKeys.poll();
+          heaviestKeys.add(new KeyProfile(context.getCurrentKey().toString(), groupRecords));
+        }
+        Iterator<VALUEIN> iterator = context.getValues().iterator();
+        if (iterator instanceof ReduceContext.ValueIterator) {
+          ((ReduceContext.ValueIterator<VALUEIN>) iterator).resetBackupStore();
+        }
+      }
+    } finally {
+      cleanup(context);
+    }
+    writeProfile(context, groups, records, new ArrayList<>(heaviestKeys));
+  }
+
+  /**
+   * Side file shape:
+   *    partition<TAB>partition<TAB>groups<TAB>records<TAB>shuffle-bytes
+   *    key<TAB>records<TAB>key (one line per heaviest key)
+   */
+  private void writeProfile(Context context, long groups, long records, List<KeyProfile> heaviestKeys)
+      throws IOException, InterruptedException {
+    int partition = context.getTaskAttemptID().getTaskID().getId();
+    long shuffleBytes = context.getCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).getValue();
+    Path file =
+        new Path(
+            FileOutputFormat.getWorkOutputPath(context),
+            String.format("%s%05d", SIDE_FILE_PREFIX, partition));
+    try (FSDataOutputStream stream = file.getFileSystem(context.getConfiguration()).create(file, true);
+        PrintWriter writer =
+            new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      writer.printf("partition\t%d\t%d\t%d\t%d%n", partition, groups, records, shuffleBytes);
+      for (KeyProfile key : heaviestKeys) {
+        writer.printf("key\t%d\t%s%n", key.records, key.key.replace('\n', ' '));
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskReport;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormatCounter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormatCounter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Machine readable report of a runner, one JSON entry per stage with its state, phase timings,
+ * I/O volumes and every counter (the custom counters included) so runs can be compared without
+ * scraping the syslogs.
+ *
+ * <p>Phase timings come from the task reports: the map phase spans the first map start to the last
+ * map finish, the reduce phase the first reduce start to the last reduce finish (shuffle and sort
+ * included), and the shuffle overlap is the part of the reduce phase spent copying map outputs
+ * while maps were still running. Task reports are not available on the local job runner.
+ */
+public class RunReport {
+
+  private final String runner;
+  private final List<String> stages = new ArrayList<>();
+
+  public RunReport(String runner) {
+    this.runner = runner;
+  }
+
+  /** Adds a stage whose manifest was current so its job did not run */
+  public void addSkippedStage(String jobName, String outputPath) {
+    stages.add(
+        String.format(
+            "    {\"job\": %s, \"state\": \"SKIPPED\", \"outputPath\": %s}",
+            StageProfiler.quote(jobName), StageProfiler.quote(outputPath)));
+  }
+
+  /** Adds a completed (successful or failed) job */
+  public void addStage(Job job, String outputPath, boolean successful) {
+    StringBuilder stage = new StringBuilder();
+    stage.append(String.format("    {%n      \"job\": %s,%n", StageProfiler.quote(job.getJobName())));
+    stage.append(String.format("      \"state\": \"%s\",%n", successful ? "SUCCEEDED" : "FAILED"));
+    stage.append(String.format("      \"outputPath\": %s,%n", StageProfiler.quote(outputPath)));
+    try {
+      stage.append(String.format("      \"elapsedMs\": %d,%n", job.getFinishTime() - job.getStartTime()));
+      appendPhaseTimings(job, stage);
+      Counters counters = job.getCounters();
+      if (counters != null) {
+        appendCounters(counters, stage);
+      }
+    } catch (IOException | InterruptedException e) {
+      System.err.printf("Failed collecting the %s report: %s%n", job.getJobName(), e.getMessage());
+    }
+    stage.setLength(stage.length() - String.format(",%n").length()); // Last field separator
+    stage.append(String.format("%n    }"));
+    stages.add(stage.toString());
+  }
+
+  private static void appendPhaseTimings(Job job, StringBuilder stage)
+      throws IOException, InterruptedException {
+    TaskReport[] maps = job.getTaskReports(TaskType.MAP);
+    TaskReport[] reduces = job.getTaskReports(TaskType.REDUCE);
+    long mapStart = Long.MAX_VALUE, mapFinish = 0;
+    for (TaskReport map : maps) {
+      mapStart = Math.min(mapStart, map.getStartTime());
+      mapFinish = Math.max(mapFinish, map.getFinishTime());
+    }
+    long reduceStart = Long.MAX_VALUE, reduceFinish = 0;
+    for (TaskReport reduce : reduces) {
+      reduceStart = Math.min(reduceStart, reduce.getStartTime());
+      reduceFinish = Math.max(reduceFinish, reduce.getFinishTime());
+    }
+    stage.append(String.format("      \"mapTasks\": %d,%n", maps.length));
+    stage.append(String.format("      \"reduceTasks\": %d,%n", reduces.length));
+    stage.append(String.format("      \"mapPhaseMs\": %d,%n", maps.length > 0 ? mapFinish - mapStart : 0));
+    stage.append(
+        String.format(
+            "      \"reducePhaseMs\": %d,%n", reduces.length > 0 ? reduceFinish - reduceStart : 0));
+    stage.append(
+        String.format(
+            "      \"shuffleOverlapMs\": %d,%n",
+            reduces.length > 0 ? Math.max(0, mapFinish - reduceStart) : 0));
+  }
+
+  private static void appendCounters(Counters counters, StringBuilder stage) {
+    long[] headline = {
+      counters.findCounter(FileInputFormatCounter.BYTES_READ).getValue(),
+      counters.findCounter(FileOutputFormatCounter.BYTES_WRITTEN).getValue(),
+      counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue(),
+      counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).getValue(),
+      counters.findCounter(TaskCounter.SPILLED_RECORDS).getValue(),
+      counters.findCounter(TaskCounter.GC_TIME_MILLIS).getValue(),
+      counters.findCounter(TaskCounter.CPU_MILLISECONDS).getValue()
+    };
+    stage.append(
+        String.format(
+            "      \"inputBytes\": %d,%n      \"outputBytes\": %d,%n"
+                + "      \"mapOutputMaterializedBytes\": %d,%n      \"shuffleBytes\": %d,%n"
+                + "      \"spilledRecords\": %d,%n      \"gcTimeMs\": %d,%n      \"cpuMs\": %d,%n",
+            headline[0], headline[1], headline[2], headline[3], headline[4], headline[5], headline[6]));
+
+    stage.append(String.format("      \"counters\": {"));
+    String groupSeparator = "";
+    for (CounterGroup group : counters) {
+      stage.append(String.format("%s%n        %s: {", groupSeparator, StageProfiler.quote(group.getName())));
+      String counterSeparator = "";
+      for (Counter counter : group) {
+        stage.append(
+            String.format(
+                "%s%n          %s: %d",
+                counterSeparator, StageProfiler.quote(counter.getName()), counter.getValue()));
+        counterSeparator = ",";
+      }
+      stage.append(String.format("%n        }"));
+      groupSeparator = ",";
+    }
+    stage.append(String.format("%n      },%n"));
+  }
+
+  /** Writes the report of the stages added so far, called after every stage so a failed run still has one */
+  public void write(Configuration conf, String reportPath) {
+    Path report = new Path(reportPath);
+    try (FSDataOutputStream stream = report.getFileSystem(conf).create(report, true);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      writer.printf("{%n  \"runner\": %s,%n  \"stages\": [%n", StageProfiler.quote(runner));
+      writer.print(String.join(String.format(",%n"), stages));
+      writer.printf("%n  ]%n}%n");
+    } catch (IOException e) {
+      System.err.printf("Failed writing the run report %s: %s%n", reportPath, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Checkpoint of a finished stage, a properties file in its output directory holding the fingerprint
+ * of the stage inputs (input and cache files with their sizes and modification times, and a hash of
+ * the job configuration) and the counter values later stages need. A rerun skips a stage whose
+ * fingerprint did not change, and since a rerun stage rewrites its output files the following
+ * stages fingerprints change too so the pipeline resumes from the first stale stage.
+ */
+public class StageManifest {
+
+  public static final String FORCE_RERUN = "forceRerun"; // Ignore the manifests and run every stage
+  private static final String MANIFEST_NAME = "_manifest.properties";
+  private static final String FINGERPRINT = "fingerprint.";
+  private static final String COUNTER = "counter.";
+
+  private final Job job;
+  private final Path outputPath;
+  private final Map<String, String> fingerprint = new TreeMap<>();
+  private final Properties stored = new Properties();
+
+  /** Fingerprints the inputs of a configured job, extra values (e.g. the corpus files count) are added to it */
+  public StageManifest(Job job, String outputPath, Map<String, String> extraValues) throws IOException {
+    this(job, outputPath, extraValues, true);
+  }
+
+  /**
+   * Fingerprints the inputs of a configured job, without the configuration hash when the stage
+   * output only depends on its input files and extra values
+   */
+  public StageManifest(
+      Job job, String outputPath, Map<String, String> extraValues, boolean withConfiguration)
+      throws IOException {
+    this.job = job;
+    this.outputPath = new Path(outputPath);
+    Configuration conf = job.getConfiguration();
+
+    List<FileStatus> inputs = new ArrayList<>();
+    for (Path input : FileInputFormat.getInputPaths(job)) {
+      addFiles(input, conf, inputs);
+    }
+    URI[] cacheFiles = job.getCacheFiles();
+    if (cacheFiles != null) {
+      for (URI cacheFile : cacheFiles) {
+        Path cachePath = new Path(cacheFile.getScheme(), cacheFile.getAuthority(), cacheFile.getPath());
+        addFiles(cachePath, conf, inputs);
+      }
+    }
+    for (int i = 0; i < inputs.size(); ++i) {
+      FileStatus input = inputs.get(i);
+      fingerprint.put(
+          String.format("%sinput.%d", FINGERPRINT, i),
+          String.format("%s %d %d", input.getPath(), input.getLen(), input.getModificationTime()));
+    }
+    for (Map.Entry<String, String> value : extraValues.entrySet()) {
+      fingerprint.put(FINGERPRINT + value.getKey(), value.getValue());
+    }
+
+    if (withConfiguration) {
+      StringBuilder configuration = new StringBuilder();
+      for (Map.Entry<String, String> entry : new TreeMap<>(conf.getValByRegex(".*")).entrySet()) {
+        configuration.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+      }
+      fingerprint.put(FINGERPRINT + "configuration", MD5Hash.digest(configuration.toString()).toString());
+    }
+    fingerprint.put(FINGERPRINT + "output", this.outputPath.toString());
+  }
+
+  /** Adds the regular files of the path (a file, directory or glob), hidden files are not job inputs */
+  private static void addFiles(Path path, Configuration conf, List<FileStatus> files) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    FileStatus[] matches = fs.globStatus(path);
+    if (matches == null) return;
+    for (FileStatus match : matches) {
+      if (!match.isDirectory()) {
+        files.add(match);
+        continue;
+      }
+      RemoteIterator<LocatedFileStatus> directoryFiles = fs.listFiles(match.getPath(), true);
+      while (directoryFiles.hasNext()) {
+        LocatedFileStatus file = directoryFiles.next();
+        String name = file.getPath().getName();
+        if (!name.startsWith("_") && !name.startsWith(".")) {
+          files.add(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns true if the stage finished before with the same fingerprint, its counters are then
+   * available. Otherwise any partial output is removed so the stage can run again.
+   */
+  public boolean isCurrent() throws IOException {
+    FileSystem fs = outputPath.getFileSystem(job.getConfiguration());
+    Path manifest = new Path(outputPath, MANIFEST_NAME);
+    if (!job.getConfiguration().getBoolean(FORCE_RERUN, false)
+        && fs.exists(manifest)
+        && fs.exists(new Path(outputPath, "_SUCCESS"))) {
+      try (FSDataInputStream stream = fs.open(manifest)) {
+        stored.load(stream);
+      }
+      boolean current = true;
+      for (Map.Entry<String, String> value : fingerprint.entrySet()) {
+        current &= value.getValue().equals(stored.getProperty(value.getKey()));
+      }
+      if (current && stored.stringPropertyNames().stream()
+          .filter(key -> key.startsWith(FINGERPRINT))
+          .allMatch(fingerprint::containsKey)) {
+        System.out.printf("%s is up to date, skipping it.%n", job.getJobName());
+        return true;
+      }
+      stored.clear();
+    }
+    if (fs.exists(outputPath)) {
+      fs.delete(outputPath, true);
+    }
+    return false;
+  }
+
+  /** Writes the manifest of the successful job with the values of the given counters */
+  public void store(Enum<?>... counters) throws IOException {
+    Counters jobCounters = job.getCounters();
+    Map<Enum<?>, Long> values = new HashMap<>();
+    for (Enum<?> counter : counters) {
+      values.put(counter, jobCounters.findCounter(counter).getValue());
+    }
+    store(values);
+  }
+
+  /** Writes the manifest with the given counter values, used when the output was not written by the job itself */
+  public void store(Map<Enum<?>, Long> counters) throws IOException {
+    stored.clear();
+    stored.putAll(fingerprint);
+    for (Map.Entry<Enum<?>, Long> counter : counters.entrySet()) {
+      stored.setProperty(COUNTER + counter.getKey().name(), Long.toString(counter.getValue()));
+    }
+    Path manifest = new Path(outputPath, MANIFEST_NAME);
+    FileSystem fs = manifest.getFileSystem(job.getConfiguration());
+    try (FSDataOutputStream stream = fs.create(manifest, true)) {
+      stored.store(stream, job.getJobName());
+    }
+  }
+
+  /** Returns the counter value of the finished stage, stored by {@link #store(Enum[])} */
+  public long getCounter(Enum<?> counter) {
+    return getCounter(stored, counter);
+  }
+
+  /** Returns the manifest stored in the output directory of a finished stage, null if there is none */
+  public static Properties read(Configuration conf, String outputPath) throws IOException {
+    Path output = new Path(outputPath);
+    FileSystem fs = output.getFileSystem(conf);
+    Path manifest = new Path(output, MANIFEST_NAME);
+    if (!fs.exists(manifest) || !fs.exists(new Path(output, "_SUCCESS"))) return null;
+    Properties values = new Properties();
+    try (FSDataInputStream stream = fs.open(manifest)) {
+      values.load(stream);
+    }
+    return values;
+  }
+
+  public static long getCounter(Properties manifest, Enum<?> counter) {
+    return Long.parseLong(manifest.getProperty(COUNTER + counter.name(), "0"));
+  }
+
+  /** Returns an extra fingerprint value of a stored manifest, null if it is missing */
+  public static String getValue(Properties manifest, String key) {
+    return manifest.getProperty(FINGERPRINT + key);
+  }
+}
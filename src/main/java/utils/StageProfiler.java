@@ -0,0 +1,136 @@
+package utils;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the partition side files of the {@link ProfilingReducer}s of a finished job into a JSON
+ * report of the heaviest keys, the per partition record and byte histogram and the skew ratio of
+ * the largest to the median partition. The side files are removed from the job output so the next
+ * stages and the downloaded results only see the regular output files.
+ */
+public class StageProfiler {
+
+  /** Partition line of a side file */
+  private static class PartitionProfile {
+    int partition;
+    long groups;
+    long records;
+    long shuffleBytes;
+  }
+
+  /** Writes the report of the job to the given path, does nothing when profiling is disabled */
+  public static void writeReport(Job job, String outputPath, String reportPath) throws IOException {
+    if (!job.getConfiguration().getBoolean(ProfilingReducer.ENABLED, false)) return;
+    Path sideFiles = new Path(String.format("%s/%s*", outputPath, ProfilingReducer.SIDE_FILE_PREFIX));
+    FileSystem fs = sideFiles.getFileSystem(job.getConfiguration());
+    FileStatus[] files = fs.globStatus(sideFiles);
+    if (files == null || files.length == 0) {
+      System.out.printf("No partitions to profile for %s.%n", job.getJobName());
+      return;
+    }
+
+    List<PartitionProfile> partitions = new ArrayList<>();
+    Map<String, Long> keyRecords = new HashMap<>(); // Salted keys are reported by several partitions
+    for (FileStatus file : files) {
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(fs.open(file.getPath()), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split("\t", 3);
+          if (fields[0].equals("partition")) {
+            String[] counts = fields[2].split("\t");
+            PartitionProfile partition = new PartitionProfile();
+            partition.partition = Integer.parseInt(fields[1]);
+            partition.groups = Long.parseLong(counts[0]);
+            partition.records = Long.parseLong(counts[1]);
+            partition.shuffleBytes = Long.parseLong(counts[2]);
+            partitions.add(partition);
+          } else {
+            keyRecords.merge(fields[2], Long.parseLong(fields[1]), Long::sum);
+          }
+        }
+      }
+      fs.delete(file.getPath(), false);
+    }
+    partitions.sort(Comparator.comparingInt(partition -> partition.partition));
+
+    long[] records = partitions.stream().mapToLong(partition -> partition.records).toArray();
+    Arrays.sort(records);
+    double median = (records[(records.length - 1) / 2] + records[records.length / 2]) / 2.0;
+    long largest = records[records.length - 1];
+    double skew = largest / Math.max(median, 1);
+
+    List<Map.Entry<String, Long>> heaviestKeys = new ArrayList<>(keyRecords.entrySet());
+    heaviestKeys.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+    int topKeys =
+        job.getConfiguration().getInt(ProfilingReducer.TOP_KEYS, ProfilingReducer.DEFAULT_TOP_KEYS);
+    heaviestKeys = heaviestKeys.subList(0, Math.min(topKeys, heaviestKeys.size()));
+
+    Path report = new Path(reportPath);
+    try (FSDataOutputStream stream = report.getFileSystem(job.getConfiguration()).create(report, true);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      writer.printf("{%n  \"job\": %s,%n", quote(job.getJobName()));
+      writer.printf("  \"partitionCount\": %d,%n", partitions.size());
+      writer.printf("  \"largestPartitionRecords\": %d,%n", largest);
+      writer.printf("  \"medianPartitionRecords\": %s,%n", median);
+      writer.printf("  \"skewRatio\": %.4f,%n", skew);
+      writer.printf("  \"partitions\": [");
+      for (int i = 0; i < partitions.size(); ++i) {
+        PartitionProfile partition = partitions.get(i);
+        writer.printf(
+            "%s%n    {\"partition\": %d, \"groups\": %d, \"records\": %d, \"shuffleBytes\": %d}",
+            i == 0 ? "" : ",",
+            partition.partition, partition.groups, partition.records, partition.shuffleBytes);
+      }
+      writer.printf("%n  ],%n  \"heaviestKeys\": [");
+      for (int i = 0; i < heaviestKeys.size(); ++i) {
+        writer.printf(
+            "%s%n    {\"key\": %s, \"records\": %d}",
+            i == 0 ? "" : ",", quote(heaviestKeys.get(i).getKey()), heaviestKeys.get(i).getValue());
+      }
+      writer.printf("%n  ]%n}%n");
+    }
+    System.out.printf(
+        "%s profile: %d partitions, skew ratio %.2f, report in %s.%n",
+        job.getJobName(), partitions.size(), skew, reportPath);
+  }
+
+  /** JSON string literal of the value */
+  static String quote(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        default:
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
@@ -0,0 +1,118 @@
+package utils;
+
+import org.apache.hadoop.io.Text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the legal arcs of a syntactic biarcs line: arcs whose head index is inside the line and
+ * whose dependent and head words are legal (lowercase [a-z-]+ stems that are not stop words).
+ * Shared by the parse stage and the corpus ingest stage so both see exactly the same arcs.
+ */
+public class StemmedBiarcParser {
+
+  private static final Pattern ENG_REGEX = Pattern.compile("[a-z-]+");
+  private static final byte ILLEGAL = 1;
+  private static final byte LEGAL = 2;
+
+  private final CachedStemmer stemmer;
+  private final BiarcTokenizer tokenizer = new BiarcTokenizer();
+
+  // Lazily stemmed words of the current line, indexed by token
+  private String[] words = new String[8];
+  private byte[] wordStates = new byte[8];
+  private char[] wordChars = new char[32];
+
+  public StemmedBiarcParser(CachedStemmer stemmer) {
+    this.stemmer = stemmer;
+  }
+
+  /**
+   * Parses the given line, the parser keeps a reference to the line bytes until the next call.
+   *
+   * @return false if the line does not contain a syntactic-ngram and a total_count field
+   */
+  public boolean parse(Text line) {
+    if (!tokenizer.tokenize(line)) return false;
+    int tokens = tokenizer.size();
+    if (tokens > words.length) {
+      words = new String[tokens];
+      wordStates = new byte[tokens];
+    } else {
+      Arrays.fill(words, 0, tokens, null);
+      Arrays.fill(wordStates, 0, tokens, (byte) 0);
+    }
+    return true;
+  }
+
+  public int size() {
+    return tokenizer.size();
+  }
+
+  public long getTotalCount() {
+    return tokenizer.getTotalCount();
+  }
+
+  /** Returns the stemmed dependent word of the token, null if the token is not an arc or the word is not legal */
+  public String getArcWord(int token) {
+    if (!tokenizer.isArc(token)) return null;
+    int headIndex = tokenizer.getHeadIndex(token);
+    if (headIndex < 0 || headIndex >= tokenizer.size()) return null;
+    return getLegalWord(token);
+  }
+
+  /** Returns the stemmed head word (lexeme) of an arc token, null if it is not legal */
+  public String getArcLexeme(int token) {
+    return getLegalWord(tokenizer.getHeadIndex(token));
+  }
+
+  /** Sets the dependency label of an arc token into the text */
+  public void getDependency(int token, Text dependency) {
+    dependency.set(
+        tokenizer.getBytes(), tokenizer.getDependencyStart(token), tokenizer.getDependencyLength(token));
+  }
+
+  private boolean isLegalWord(String word) {
+    return ENG_REGEX.matcher(word).matches() && !StopWordsIdentifier.isStopWord(word);
+  }
+
+  /**
+   * Returns the stemmed lowercase word of the token or null if it is not a legal word, tokens are
+   * only stemmed once they passed the head index check and their characters are legal
+   */
+  private String getLegalWord(int token) {
+    if (wordStates[token] == 0) {
+      words[token] = stemLegalWord(token);
+      wordStates[token] = words[token] != null ? LEGAL : ILLEGAL;
+    }
+    return words[token];
+  }
+
+  private String stemLegalWord(int token) {
+    byte[] bytes = tokenizer.getBytes();
+    int start = tokenizer.getWordStart(token);
+    int length = tokenizer.getWordLength(token);
+    if (length == 0) return null;
+    if (length > wordChars.length) wordChars = new char[Math.max(length, wordChars.length * 2)];
+
+    // A stem keeps the characters of its word, so checking [a-z-]+ before stemming is the same as after
+    for (int i = 0; i < length; ++i) {
+      int c = bytes[start + i];
+      if (c < 0) return stemNonAsciiWord(bytes, start, length);
+      if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+      if ((c < 'a' || c > 'z') && c != '-') return null;
+      wordChars[i] = (char) c;
+    }
+    String stem = stemmer.stem(wordChars, length);
+    return StopWordsIdentifier.isStopWord(stem) ? null : stem;
+  }
+
+  private String stemNonAsciiWord(byte[] bytes, int start, int length) {
+    String word = new String(bytes, start, length, StandardCharsets.UTF_8);
+    String stem = stemmer.stem(word.toLowerCase(Locale.ROOT));
+    return isLegalWord(stem) ? stem : null;
+  }
+}
@@ -0,0 +1,115 @@
+package utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+
+import java.io.IOException;
+
+/**
+ * Frequency ordered dictionary of lexemes or features, the most frequent word gets id 0.
+ *
+ * <p>Ids travel between the stages as short tokens written with a 64 symbols alphabet that
+ * contains none of the '<' ',' '>' '/' separators used in the syntactic texts, so the frequent
+ * words which make most of the records are encoded with 1 or 2 bytes. The tokens keep the text
+ * elements of {@link measures_association.SyntacticPairWritable} and the syntactic texts, so every
+ * stage runs unchanged on them; a vint id would be about a fifth shorter and cheaper to compare but
+ * needs its own key and value types in every stage.
+ *
+ * <p>Every task holds the whole dictionary, {@link ByteKeyCountTable} keeps about 28 bytes per
+ * word besides the word bytes.
+ */
+public class VocabularyDictionary {
+
+  public static final String ENABLED = "dictionaryEncoding";
+  public static final String LEXEMES = "lexemes";
+  public static final String FEATURES = "features";
+
+  private static final byte[] ALPHABET =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_".getBytes();
+  private static final int[] SYMBOL_VALUES = new int[128];
+
+  static {
+    java.util.Arrays.fill(SYMBOL_VALUES, -1);
+    for (int i = 0; i < ALPHABET.length; ++i) {
+      SYMBOL_VALUES[ALPHABET[i]] = i;
+    }
+  }
+
+  // Words are inserted in id order so the table entry index is also the word id
+  private final ByteKeyCountTable words = new ByteKeyCountTable();
+  private final byte[] tokenBuffer = new byte[6];
+
+  /** Loads the dictionary from a local (distributed cache) sequence file of <word, id> records */
+  public static VocabularyDictionary load(Configuration conf, String localName) throws IOException {
+    return load(conf, FileSystem.getLocal(conf).makeQualified(new Path(localName)));
+  }
+
+  /** Loads the dictionary from a sequence file of <word, id> records on any file system */
+  public static VocabularyDictionary load(Configuration conf, Path path) throws IOException {
+    VocabularyDictionary dictionary = new VocabularyDictionary();
+    try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path))) {
+      Text word = new Text();
+      IntWritable id = new IntWritable();
+      while (reader.next(word, id)) {
+        if (id.get() != dictionary.words.size()) {
+          throw new IOException(
+              String.format("Dictionary %s is not in id order at id %d", path, id.get()));
+        }
+        dictionary.words.add(word.getBytes(), 0, word.getLength(), id.get());
+      }
+    }
+    return dictionary;
+  }
+
+  /**
+   * Sets the token of the given word into the token text.
+   *
+   * @return false if the word is not in the dictionary
+   */
+  public boolean encode(Text word, Text token) {
+    long id = words.get(word.getBytes(), 0, word.getLength());
+    if (id < 0) return false;
+    setToken((int) id, token);
+    return true;
+  }
+
+  /**
+   * Sets the word of the given token into the word text.
+   *
+   * @return false if the token is not a dictionary id
+   */
+  public boolean decode(Text token, Text word) {
+    int id = parseToken(token.getBytes(), token.getLength());
+    if (id < 0 || id >= words.size()) return false;
+    word.set(words.getArena(), words.getKeyOffset(id), words.getKeyLength(id));
+    return true;
+  }
+
+  public int size() {
+    return words.size();
+  }
+
+  private void setToken(int id, Text token) {
+    int position = tokenBuffer.length;
+    do {
+      tokenBuffer[--position] = ALPHABET[id & 63];
+      id >>>= 6;
+    } while (id != 0);
+    token.set(tokenBuffer, position, tokenBuffer.length - position);
+  }
+
+  private static int parseToken(byte[] bytes, int length) {
+    if (length == 0 || length > 6) return -1;
+    int id = 0;
+    for (int i = 0; i < length; ++i) {
+      int value = bytes[i] >= 0 ? SYMBOL_VALUES[bytes[i]] : -1;
+      if (value < 0) return -1;
+      id = (id << 6) | value;
+    }
+    return id; // negative when the token overflows an int
+  }
+}
@@ -0,0 +1,84 @@
+package measures_association;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyntacticKeyWritableTest {
+
+  private static final String[] TEXTS = {"", "a", "ab", "b", "\u05d1\u05d9\u05ea"};
+
+  private static byte[] write(SyntacticKeyWritable key) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    key.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static List<SyntacticKeyWritable> allKeys() {
+    List<SyntacticKeyWritable> keys = new ArrayList<>();
+    for (String lexeme : TEXTS) {
+      SyntacticKeyWritable key = new SyntacticKeyWritable();
+      key.setLexeme(new Text(lexeme));
+      keys.add(key);
+      for (String word : TEXTS) {
+        for (String dependency : TEXTS) {
+          key = new SyntacticKeyWritable();
+          key.setLexemeFeature(new Text(lexeme), new Text(word), new Text(dependency));
+          keys.add(key);
+        }
+      }
+    }
+    for (String word : TEXTS) {
+      for (String dependency : TEXTS) {
+        SyntacticKeyWritable key = new SyntacticKeyWritable();
+        key.setFeature(new Text(word), new Text(dependency));
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  @Test
+  public void roundTripsEveryType() throws IOException {
+    SyntacticKeyWritable reused = new SyntacticKeyWritable();
+    DataInputBuffer in = new DataInputBuffer();
+    for (SyntacticKeyWritable key : allKeys()) {
+      byte[] bytes = write(key);
+      in.reset(bytes, bytes.length);
+      reused.readFields(in);
+      assertEquals(bytes.length, in.getPosition());
+      assertEquals(key, reused);
+    }
+  }
+
+  @Test
+  public void rawComparatorIsRegistered() {
+    assertEquals(
+        SyntacticKeyWritable.Comparator.class,
+        WritableComparator.get(SyntacticKeyWritable.class).getClass());
+  }
+
+  @Test
+  public void rawComparatorAgreesWithCompareTo() throws IOException {
+    SyntacticKeyWritable.Comparator comparator = new SyntacticKeyWritable.Comparator();
+    for (SyntacticKeyWritable key1 : allKeys()) {
+      byte[] b1 = write(key1);
+      for (SyntacticKeyWritable key2 : allKeys()) {
+        byte[] b2 = write(key2);
+        assertEquals(
+            key1 + " vs " + key2,
+            Integer.signum(key1.compareTo(key2)),
+            Integer.signum(comparator.compare(b1, 0, b1.length, b2, 0, b2.length)));
+      }
+    }
+  }
+}
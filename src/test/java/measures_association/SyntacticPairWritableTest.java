@@ -0,0 +1,147 @@
+package measures_association;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SyntacticPairWritableTest {
+
+  private static final String[] ELEMENTS = {"", "a", "ab", "b", "big/amod", "big/ROOT", "\u05d1\u05d9\u05ea/nsubj"};
+
+  private static byte[] write(SyntacticPairWritable pair) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    pair.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  /** The format written before the compact format: the type name and the element as strings */
+  private static byte[] writeLegacy(SyntacticPairWritable.Type type, String element) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    WritableUtils.writeString(out, type.toString());
+    WritableUtils.writeString(out, element);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static SyntacticPairWritable read(byte[] bytes, SyntacticPairWritable pair) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    pair.readFields(in);
+    assertEquals("record fully read", bytes.length, in.getPosition());
+    return pair;
+  }
+
+  private static List<SyntacticPairWritable> allPairs() {
+    List<SyntacticPairWritable> pairs = new ArrayList<>();
+    for (String element : ELEMENTS) {
+      for (SyntacticPairWritable.Type type : SyntacticPairWritable.Type.values()) {
+        pairs.add(new SyntacticPairWritable(type, element));
+      }
+    }
+    return pairs;
+  }
+
+  @Test
+  public void roundTripsEveryTypeInCompactFormat() throws IOException {
+    SyntacticPairWritable reused = new SyntacticPairWritable();
+    for (SyntacticPairWritable pair : allPairs()) {
+      byte[] bytes = write(pair);
+      assertEquals(pair.getType().ordinal() | 0x80, bytes[0] & 0xFF);
+      read(bytes, reused);
+      assertEquals(pair.getType(), reused.getType());
+      assertEquals(pair.getElement(), reused.getElement());
+    }
+  }
+
+  @Test
+  public void reusesElementOnRead() throws IOException {
+    SyntacticPairWritable pair = new SyntacticPairWritable();
+    Text element = pair.getElement();
+    read(write(new SyntacticPairWritable(SyntacticPairWritable.Type.FEATURE, "big/amod")), pair);
+    assertSame(element, pair.getElement());
+  }
+
+  @Test
+  public void readsLegacyFormat() throws IOException {
+    for (SyntacticPairWritable pair : allPairs()) {
+      SyntacticPairWritable legacy =
+          read(writeLegacy(pair.getType(), pair.getElement().toString()), new SyntacticPairWritable());
+      assertEquals(pair.getType(), legacy.getType());
+      assertEquals(pair.getElement(), legacy.getElement());
+    }
+  }
+
+  @Test
+  public void rawComparatorIsRegistered() {
+    assertEquals(
+        SyntacticPairWritable.Comparator.class,
+        WritableComparator.get(SyntacticPairWritable.class).getClass());
+  }
+
+  @Test
+  public void rawComparatorAgreesWithCompareToInBothFormats() throws IOException {
+    SyntacticPairWritable.Comparator comparator = new SyntacticPairWritable.Comparator();
+    for (SyntacticPairWritable pair1 : allPairs()) {
+      for (SyntacticPairWritable pair2 : allPairs()) {
+        int expected = Integer.signum(pair1.compareTo(pair2));
+        byte[][] bytes1 = {write(pair1), writeLegacy(pair1.getType(), pair1.getElement().toString())};
+        byte[][] bytes2 = {write(pair2), writeLegacy(pair2.getType(), pair2.getElement().toString())};
+        for (byte[] b1 : bytes1) {
+          for (byte[] b2 : bytes2) {
+            assertEquals(
+                pair1 + " vs " + pair2,
+                expected,
+                Integer.signum(comparator.compare(b1, 0, b1.length, b2, 0, b2.length)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void lexemeFeatureSortsLast() throws IOException {
+    SyntacticPairWritable.Comparator comparator = new SyntacticPairWritable.Comparator();
+    for (String element : ELEMENTS) {
+      SyntacticPairWritable lexemeFeature =
+          new SyntacticPairWritable(SyntacticPairWritable.Type.LEXEME_FEATURE, element);
+      byte[] lexemeFeatureBytes = write(lexemeFeature);
+      for (SyntacticPairWritable.Type type :
+          new SyntacticPairWritable.Type[] {SyntacticPairWritable.Type.LEXEME, SyntacticPairWritable.Type.FEATURE}) {
+        SyntacticPairWritable other = new SyntacticPairWritable(type, element);
+        byte[] otherBytes = write(other);
+        assertEquals(1, Integer.signum(lexemeFeature.compareTo(other)));
+        assertEquals(
+            1,
+            Integer.signum(comparator.compare(
+                lexemeFeatureBytes, 0, lexemeFeatureBytes.length, otherBytes, 0, otherBytes.length)));
+      }
+    }
+  }
+
+  @Test
+  public void elementComparatorGroupsByElementOnly() throws IOException {
+    SyntacticPairWritable.ElementComparator comparator = new SyntacticPairWritable.ElementComparator();
+    for (SyntacticPairWritable pair1 : allPairs()) {
+      for (SyntacticPairWritable pair2 : allPairs()) {
+        byte[] b1 = write(pair1);
+        byte[] b2 = write(pair2);
+        assertEquals(
+            Integer.signum(pair1.getElement().compareTo(pair2.getElement())),
+            Integer.signum(comparator.compare(b1, 0, b1.length, b2, 0, b2.length)));
+        assertEquals(
+            Integer.signum(pair1.getElement().compareTo(pair2.getElement())),
+            Integer.signum(comparator.compare(pair1, pair2)));
+      }
+    }
+  }
+}
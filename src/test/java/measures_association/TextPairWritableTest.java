@@ -0,0 +1,63 @@
+package measures_association;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextPairWritableTest {
+
+  private static final String[] TEXTS = {"", "a", "ab", "b", "<big,small>", "\u05d1\u05d9\u05ea"};
+
+  private static byte[] write(TextPairWritable pair) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    pair.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static List<TextPairWritable> allPairs() {
+    List<TextPairWritable> pairs = new ArrayList<>();
+    for (String first : TEXTS) {
+      for (String second : TEXTS) {
+        pairs.add(new TextPairWritable(first, second));
+      }
+    }
+    return pairs;
+  }
+
+  @Test
+  public void roundTrips() throws IOException {
+    TextPairWritable reused = new TextPairWritable();
+    DataInputBuffer in = new DataInputBuffer();
+    for (TextPairWritable pair : allPairs()) {
+      byte[] bytes = write(pair);
+      in.reset(bytes, bytes.length);
+      reused.readFields(in);
+      assertEquals(bytes.length, in.getPosition());
+      assertEquals(pair.getFirst(), reused.getFirst());
+      assertEquals(pair.getSecond(), reused.getSecond());
+    }
+  }
+
+  @Test
+  public void serializedComparatorAgreesWithCompareTo() throws IOException {
+    WritableComparator comparator = WritableComparator.get(TextPairWritable.class);
+    for (TextPairWritable pair1 : allPairs()) {
+      for (TextPairWritable pair2 : allPairs()) {
+        byte[] b1 = write(pair1);
+        byte[] b2 = write(pair2);
+        assertEquals(
+            pair1 + " vs " + pair2,
+            Integer.signum(pair1.compareTo(pair2)),
+            Integer.signum(comparator.compare(b1, 0, b1.length, b2, 0, b2.length)));
+      }
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package similarity_vectors;
+
+import measures_association.AssociationMeasuresWritable;
+import measures_association.CounterTypes;
+import measures_association.TextPairWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+import utils.TaskDriver;
+import utils.TaskDriver.Output;
+import utils.TaskDriver.Record;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AllPairsSimilarityTest {
+
+  private static final double DELTA = 1e-9;
+
+  /** Lexeme vectors sharing some of their features, "cat" shares none with "tree" */
+  private static Map<String, LexemeVectorWritable> vectors() {
+    Map<String, LexemeVectorWritable> vectors = new HashMap<>();
+    vectors.put(
+        "cat",
+        vector("cat", "black/amod", 4, 0.4, 1.2, 0.9, "eat/nsubj", 3, 0.3, 0.8, 0.6, "run/nsubj", 2, 0.2, -0.2, 0.1));
+    vectors.put(
+        "dog",
+        vector("dog", "black/amod", 2, 0.25, 0.7, 0.5, "run/nsubj", 5, 0.5, 1.4, 1.3, "bark/nsubj", 1, 0.1, 2.1, 0.4));
+    vectors.put("tree", vector("tree", "green/amod", 6, 0.6, 1.9, 1.7, "bark/nsubj", 2, 0.2, 0.3, 0.2));
+    vectors.put("car", vector("car", "black/amod", 1, 0.1, -0.5, -0.3, "run/nsubj", 1, 0.1, 0.2, 0.1));
+    return vectors;
+  }
+
+  /** Builds a vector of features given as: feature, plain, relative, pmi, t-test, ... */
+  static LexemeVectorWritable vector(String lexeme, Object... features) {
+    LexemeVectorWritable vector = new LexemeVectorWritable();
+    for (int i = 0; i < features.length; i += 5) {
+      vector.add(
+          new AssociationMeasuresWritable(
+              lexeme,
+              (String) features[i],
+              ((Number) features[i + 1]).longValue(),
+              ((Number) features[i + 2]).doubleValue(),
+              ((Number) features[i + 3]).doubleValue(),
+              ((Number) features[i + 4]).doubleValue()));
+    }
+    vector.sortByFeature();
+    vector.aggregate();
+    return vector;
+  }
+
+  static double[] similarity(LexemeVectorWritable vector1, LexemeVectorWritable vector2) {
+    SimilarityKernel kernel = new SimilarityKernel();
+    kernel.reset();
+    kernel.addIntersection(vector1, vector2);
+    return kernel.getSimilarityVector(vector1.getAggregates(), 0, vector2.getAggregates(), 0);
+  }
+
+  static List<Record<Text, LexemeVectorWritable>> vectorRecords(Map<String, LexemeVectorWritable> vectors) {
+    List<Record<Text, LexemeVectorWritable>> records = new ArrayList<>();
+    for (Map.Entry<String, LexemeVectorWritable> vector : vectors.entrySet()) {
+      records.add(TaskDriver.record(new Text(vector.getKey()), vector.getValue()));
+    }
+    return records;
+  }
+
+  private static Configuration conf() {
+    Configuration conf = new Configuration();
+    conf.setFloat(AllPairsSimilarity.PairsReducerClass.THRESHOLD, -1);
+    return conf;
+  }
+
+  private static <T extends org.apache.hadoop.io.Writable> T roundTrip(T writable, T read) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    writable.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    read.readFields(in);
+    assertEquals("record fully read", out.getLength(), in.getPosition());
+    return read;
+  }
+
+  static void assertPair(String first, String second, TextPairWritable pair) {
+    assertEquals(first, pair.first.toString());
+    assertEquals(second, pair.second.toString());
+  }
+
+  /** Runs the three all pairs jobs, the combiner runs over the whole index output */
+  private static Output<Text, SimilarityVectorWritable> allPairs(
+      Map<String, LexemeVectorWritable> vectors, Configuration conf) throws IOException, InterruptedException {
+    List<Record<Text, LexemeVectorWritable>> input = vectorRecords(vectors);
+    Output<Text, PostingWritable> postings =
+        TaskDriver.map(new AllPairsSimilarity.PostingsMapperClass(), conf, input);
+    Output<TextPairWritable, PairPartialWritable> index =
+        TaskDriver.reduce(new AllPairsSimilarity.IndexReducerClass(), conf, postings.records, null);
+    Output<TextPairWritable, PairPartialWritable> aggregates =
+        TaskDriver.map(new AllPairsSimilarity.AggregatesMapperClass(), conf, input);
+
+    List<Record<TextPairWritable, PairPartialWritable>> firstJoin = new ArrayList<>(index.records);
+    Collections.reverse(firstJoin); // The shuffle and not the input order puts the aggregates first
+    firstJoin.addAll(aggregates.records);
+    Output<TextPairWritable, PairPartialWritable> combined =
+        TaskDriver.reduce(new AllPairsSimilarity.PartialsCombinerClass(), conf, firstJoin, null);
+    Output<TextPairWritable, PairPartialWritable> joined =
+        TaskDriver.reduce(
+            new AllPairsSimilarity.FirstAggregatesReducerClass(),
+            conf,
+            combined.records,
+            new AllPairsSimilarity.FirstLexemeGroupingComparator());
+
+    List<Record<TextPairWritable, PairPartialWritable>> secondJoin = new ArrayList<>(joined.records);
+    secondJoin.addAll(aggregates.records);
+    return TaskDriver.reduce(
+        new AllPairsSimilarity.PairsReducerClass(),
+        conf,
+        secondJoin,
+        new AllPairsSimilarity.FirstLexemeGroupingComparator());
+  }
+
+  @Test
+  public void testPairPartialRoundTrip() throws IOException {
+    double[] sums = new double[SimilarityKernel.INTERSECTION_SIZE];
+    double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+    for (int i = 0; i < sums.length; ++i) sums[i] = i + 0.5;
+    for (int i = 0; i < aggregates.length; ++i) aggregates[i] = -i - 0.25;
+
+    PairPartialWritable both = new PairPartialWritable();
+    both.set(sums, aggregates);
+    PairPartialWritable read = roundTrip(both, new PairPartialWritable());
+    assertTrue(read.hasIntersectionSums());
+    assertTrue(read.hasAggregates());
+    assertArrayEquals(sums, read.getIntersectionSums(), 0);
+    assertArrayEquals(aggregates, read.getAggregates(), 0);
+
+    PairPartialWritable sumsOnly = new PairPartialWritable();
+    sumsOnly.setIntersectionSums(sums);
+    read = roundTrip(sumsOnly, read);
+    assertTrue(read.hasIntersectionSums());
+    assertFalse(read.hasAggregates());
+
+    PairPartialWritable aggregatesOnly = new PairPartialWritable();
+    aggregatesOnly.setAggregates(aggregates);
+    read = roundTrip(aggregatesOnly, read);
+    assertFalse(read.hasIntersectionSums());
+    assertTrue(read.hasAggregates());
+    assertArrayEquals(aggregates, read.getAggregates(), 0);
+  }
+
+  @Test
+  public void testPostingRoundTrip() throws IOException {
+    LexemeVectorWritable vector = vectors().get("dog");
+    PostingWritable posting = new PostingWritable();
+    posting.set(new Text("dog"), vector, 1);
+    PostingWritable read = roundTrip(posting, new PostingWritable());
+    assertEquals(new Text("dog"), read.getLexeme());
+    assertArrayEquals(
+        Arrays.copyOfRange(vector.getValues(), vector.getValuesOffset(1), vector.getValuesOffset(2)),
+        read.getValues(),
+        0);
+  }
+
+  @Test
+  public void testAllPairsMatchKernel() throws IOException, InterruptedException {
+    Map<String, LexemeVectorWritable> vectors = vectors();
+    Output<Text, SimilarityVectorWritable> pairs = allPairs(vectors, conf());
+    Map<String, double[]> expected = new HashMap<>();
+    expected.put("<cat,dog>", similarity(vectors.get("cat"), vectors.get("dog")));
+    expected.put("<car,cat>", similarity(vectors.get("car"), vectors.get("cat")));
+    expected.put("<car,dog>", similarity(vectors.get("car"), vectors.get("dog")));
+    expected.put("<dog,tree>", similarity(vectors.get("dog"), vectors.get("tree")));
+    assertEquals(expected.size(), pairs.records.size());
+    for (Record<Text, SimilarityVectorWritable> pair : pairs.records) {
+      assertTrue(pair.key.toString(), expected.containsKey(pair.key.toString()));
+      assertArrayEquals(expected.get(pair.key.toString()), pair.value.similarityVector, DELTA);
+    }
+  }
+
+  @Test
+  public void testFirstAggregatesJoinSumsThePartialsOfEachPair() throws IOException, InterruptedException {
+    double[] sums = new double[SimilarityKernel.INTERSECTION_SIZE];
+    Arrays.fill(sums, 1);
+    double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+    Arrays.fill(aggregates, 7);
+    List<Record<TextPairWritable, PairPartialWritable>> input = new ArrayList<>();
+    for (String second : new String[] {"c", "b", "c", "d", "b", "c"}) {
+      PairPartialWritable partial = new PairPartialWritable();
+      partial.setIntersectionSums(sums);
+      input.add(TaskDriver.record(new TextPairWritable("a", second), partial));
+    }
+    PairPartialWritable lexeme = new PairPartialWritable();
+    lexeme.setAggregates(aggregates);
+    input.add(TaskDriver.record(new TextPairWritable("a", ""), lexeme));
+
+    Output<TextPairWritable, PairPartialWritable> joined =
+        TaskDriver.reduce(
+            new AllPairsSimilarity.FirstAggregatesReducerClass(),
+            new Configuration(),
+            input,
+            new AllPairsSimilarity.FirstLexemeGroupingComparator());
+    assertEquals(3, joined.records.size());
+    String[] seconds = {"b", "c", "d"};
+    int[] partials = {2, 3, 1};
+    for (int i = 0; i < seconds.length; ++i) {
+      Record<TextPairWritable, PairPartialWritable> record = joined.records.get(i);
+      assertPair(seconds[i], "a", record.key);
+      assertTrue(record.value.hasAggregates());
+      assertArrayEquals(aggregates, record.value.getAggregates(), 0);
+      for (double sum : record.value.getIntersectionSums()) {
+        assertEquals(partials[i], sum, 0);
+      }
+    }
+  }
+
+  @Test
+  public void testPartialsCombinerPassesAggregatesThrough() throws IOException, InterruptedException {
+    double[] sums = new double[SimilarityKernel.INTERSECTION_SIZE];
+    Arrays.fill(sums, 0.5);
+    List<Record<TextPairWritable, PairPartialWritable>> input = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      PairPartialWritable partial = new PairPartialWritable();
+      partial.setIntersectionSums(sums);
+      input.add(TaskDriver.record(new TextPairWritable("a", "b"), partial));
+    }
+    PairPartialWritable lexeme = new PairPartialWritable();
+    lexeme.setAggregates(new double[SimilarityKernel.AGGREGATE_SIZE]);
+    input.add(TaskDriver.record(new TextPairWritable("a", ""), lexeme));
+
+    Output<TextPairWritable, PairPartialWritable> combined =
+        TaskDriver.reduce(new AllPairsSimilarity.PartialsCombinerClass(), new Configuration(), input, null);
+    assertEquals(2, combined.records.size());
+    assertPair("a", "", combined.records.get(0).key);
+    assertFalse(combined.records.get(0).value.hasIntersectionSums());
+    assertPair("a", "b", combined.records.get(1).key);
+    assertFalse(combined.records.get(1).value.hasAggregates());
+    assertEquals(1.5, combined.records.get(1).value.getIntersectionSums()[0], 0);
+  }
+
+  @Test
+  public void testOversizedFeaturesAreSkipped() throws IOException, InterruptedException {
+    Configuration conf = conf();
+    conf.setInt(AllPairsSimilarity.IndexReducerClass.MAX_FEATURE_LEXEMES, 2);
+    Map<String, LexemeVectorWritable> vectors = vectors();
+    Output<Text, PostingWritable> postings =
+        TaskDriver.map(new AllPairsSimilarity.PostingsMapperClass(), conf, vectorRecords(vectors));
+    Output<TextPairWritable, PairPartialWritable> index =
+        TaskDriver.reduce(new AllPairsSimilarity.IndexReducerClass(), conf, postings.records, null);
+    assertEquals(2, index.getCounter(CounterTypes.ALL_PAIRS_OVERSIZED_FEATURES)); // black/amod, run/nsubj
+    assertEquals(1, index.records.size()); // bark/nsubj
+    assertPair("dog", "tree", index.records.get(0).key);
+  }
+
+  @Test
+  public void testThresholdPrunesPairs() throws IOException, InterruptedException {
+    Map<String, LexemeVectorWritable> vectors = vectors();
+    Configuration conf = conf();
+    conf.setFloat(AllPairsSimilarity.PairsReducerClass.THRESHOLD, 0.5f);
+    conf.set(
+        AllPairsSimilarity.PairsReducerClass.THRESHOLD_MEASURE,
+        AssociationMeasure.Standard.PLAIN_FREQUENCY.getName());
+    Output<Text, SimilarityVectorWritable> pairs = allPairs(vectors, conf);
+    int cosine = AllPairsSimilarity.PairsReducerClass.getThresholdIndex(conf);
+    assertEquals(2, cosine);
+    int kept = 0;
+    for (String[] pair : new String[][] {{"cat", "dog"}, {"car", "cat"}, {"car", "dog"}, {"dog", "tree"}}) {
+      if (similarity(vectors.get(pair[0]), vectors.get(pair[1]))[cosine] >= 0.5) ++kept;
+    }
+    assertTrue(kept > 0 && kept < 4);
+    assertEquals(kept, pairs.records.size());
+    assertEquals(4 - kept, pairs.getCounter(CounterTypes.PRUNED_PAIRS));
+  }
+
+  @Test
+  public void testAggregatesAndPairsOfALexemeShareTheirPartitionAndGroup() {
+    AllPairsSimilarity.FirstLexemePartitionerClass partitioner = new AllPairsSimilarity.FirstLexemePartitionerClass();
+    AllPairsSimilarity.FirstLexemeGroupingComparator grouping = new AllPairsSimilarity.FirstLexemeGroupingComparator();
+    TextPairWritable lexeme = new TextPairWritable("dog", "");
+    for (String second : new String[] {"cat", "tree", "\u05d1\u05d9\u05ea"}) {
+      TextPairWritable pair = new TextPairWritable("dog", second);
+      for (int partitions = 1; partitions < 20; ++partitions) {
+        assertEquals(
+            partitioner.getPartition(lexeme, null, partitions), partitioner.getPartition(pair, null, partitions));
+      }
+      assertEquals(0, grouping.compare(lexeme, pair));
+      assertTrue(lexeme.compareTo(pair) < 0); // The aggregates sort first within the group
+    }
+    assertTrue(grouping.compare(new TextPairWritable("cat", "zebra"), lexeme) < 0);
+  }
+}
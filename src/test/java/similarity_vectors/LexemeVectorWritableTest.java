@@ -0,0 +1,125 @@
+package similarity_vectors;
+
+import measures_association.AssociationMeasuresWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LexemeVectorWritableTest {
+
+  private static final String[] FEATURES = {"run/ROOT", "big/amod", "\u05d1\u05d9\u05ea/nsubj", "a/amod", "dog/nsubj"};
+
+  private static byte[] write(LexemeVectorWritable vector) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    vector.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static LexemeVectorWritable read(byte[] bytes, LexemeVectorWritable vector) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    vector.readFields(in);
+    assertEquals("record fully read", bytes.length, in.getPosition());
+    return vector;
+  }
+
+  private static LexemeVectorWritable vector(String... features) {
+    LexemeVectorWritable vector = new LexemeVectorWritable();
+    for (int i = 0; i < features.length; ++i) {
+      vector.add(new AssociationMeasuresWritable("lexeme", features[i], i + 1, 0.1 * (i + 1), 0.5 - i, 0.25 * i));
+    }
+    vector.sortByFeature();
+    vector.aggregate();
+    return vector;
+  }
+
+  private static double[] values(LexemeVectorWritable vector, int index) {
+    int offset = vector.getValuesOffset(index);
+    return Arrays.copyOfRange(vector.getValues(), offset, offset + SimilarityKernel.MEASURES.length);
+  }
+
+  private static void assertSameVector(LexemeVectorWritable expected, LexemeVectorWritable actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertEquals(expected.getFeature(i), actual.getFeature(i));
+      assertArrayEquals(values(expected, i), values(actual, i), 0);
+    }
+    assertArrayEquals(expected.getAggregates(), actual.getAggregates(), 0);
+  }
+
+  @Test
+  public void testSortByFeatureKeepsTheValuesOfEachFeature() {
+    LexemeVectorWritable vector = vector(FEATURES);
+    String[] sorted = FEATURES.clone();
+    Arrays.sort(sorted, (first, second) -> new Text(first).compareTo(new Text(second)));
+    for (int i = 0; i < sorted.length; ++i) {
+      assertEquals(sorted[i], vector.getFeature(i).toString());
+      int added = Arrays.asList(FEATURES).indexOf(sorted[i]);
+      assertEquals(added + 1, values(vector, i)[0], 0);
+      assertEquals(0.5 - added, values(vector, i)[2], 0);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    LexemeVectorWritable vector = vector(FEATURES);
+    assertSameVector(vector, read(write(vector), new LexemeVectorWritable()));
+  }
+
+  @Test
+  public void testReadIntoLargerVector() throws IOException {
+    LexemeVectorWritable vector = vector("a/amod", "b/amod");
+    assertSameVector(vector, read(write(vector), vector(FEATURES)));
+  }
+
+  @Test
+  public void testEmptyVectorLeavesAggregatesOut() throws IOException {
+    LexemeVectorWritable empty = new LexemeVectorWritable();
+    byte[] bytes = write(empty);
+    assertEquals(1, bytes.length);
+    LexemeVectorWritable read = read(bytes, vector(FEATURES));
+    assertEquals(0, read.size());
+    assertArrayEquals(new double[SimilarityKernel.AGGREGATE_SIZE], read.getAggregates(), 0);
+  }
+
+  @Test
+  public void testSetCopiesTheVector() {
+    LexemeVectorWritable vector = vector(FEATURES);
+    LexemeVectorWritable copy = vector("x/amod");
+    copy.set(vector);
+    assertSameVector(vector, copy);
+    vector.getFeature(0).set("changed");
+    assertEquals(FEATURES[3], copy.getFeature(0).toString());
+  }
+
+  @Test
+  public void testFindFeature() {
+    LexemeVectorWritable vector = vector("b", "d", "f", "h", "j", "l", "n");
+    for (int i = 0; i < vector.size(); ++i) {
+      assertEquals(i, vector.findFeature(vector.getFeature(i), 0));
+      assertEquals(i, vector.findFeature(vector.getFeature(i), i));
+    }
+    assertEquals(-1, vector.findFeature(new Text("a"), 0));
+    assertEquals(-4, vector.findFeature(new Text("g"), 0));
+    assertEquals(-4, vector.findFeature(new Text("g"), 2));
+    assertEquals(-8, vector.findFeature(new Text("z"), 0));
+    assertEquals(-8, vector.findFeature(new Text("b"), vector.size()));
+  }
+
+  @Test
+  public void testAggregatesAreTheKernelAggregates() {
+    LexemeVectorWritable vector = vector(FEATURES);
+    double[] aggregates = new double[SimilarityKernel.AGGREGATE_SIZE];
+    SimilarityKernel.aggregate(vector.getValues(), vector.size(), aggregates, 0);
+    assertArrayEquals(aggregates, vector.getAggregates(), 0);
+    int relativeOffset = SimilarityKernel.AGGREGATE_SIZE / SimilarityKernel.MEASURES.length;
+    assertEquals(0.1 + 0.2 + 0.3 + 0.4 + 0.5, vector.getAggregates()[relativeOffset], 1e-12); // sum(l[i])
+  }
+}
@@ -0,0 +1,236 @@
+package similarity_vectors;
+
+import measures_association.CounterTypes;
+import measures_association.TextPairWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+import utils.TaskDriver;
+import utils.TaskDriver.Output;
+import utils.TaskDriver.Record;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static similarity_vectors.AllPairsSimilarityTest.assertPair;
+import static similarity_vectors.AllPairsSimilarityTest.similarity;
+import static similarity_vectors.AllPairsSimilarityTest.vector;
+import static similarity_vectors.AllPairsSimilarityTest.vectorRecords;
+
+public class LshCandidatesTest {
+
+  private static final double DELTA = 1e-9;
+
+  private static Map<String, LexemeVectorWritable> vectors() {
+    Map<String, LexemeVectorWritable> vectors = new LinkedHashMap<>();
+    vectors.put("cat", vector("cat", "black/amod", 4, 0.4, 1.2, 0.9, "run/nsubj", 2, 0.2, 0.7, 0.1));
+    vectors.put("kitten", vector("kitten", "black/amod", 4, 0.4, 1.2, 0.9, "run/nsubj", 2, 0.2, 0.7, 0.1));
+    vectors.put("dog", vector("dog", "black/amod", 2, 0.25, 0.7, 0.5, "bark/nsubj", 1, 0.1, 2.1, 0.4));
+    vectors.put("stone", vector("stone", "grey/amod", 3, 0.3, -0.6, -0.2));
+    return vectors;
+  }
+
+  private static Set<String> buckets(Output<Text, Text> signatures, String lexeme) {
+    Set<String> buckets = new HashSet<>();
+    for (Record<Text, Text> record : signatures.records) {
+      if (record.value.toString().equals(lexeme)) {
+        buckets.add(record.key.toString());
+      }
+    }
+    return buckets;
+  }
+
+  private static Record<TextPairWritable, LexemeVectorWritable> candidate(String first, String second) {
+    return TaskDriver.record(new TextPairWritable(first, second), new LexemeVectorWritable());
+  }
+
+  @Test
+  public void testSignatureBands() throws IOException, InterruptedException {
+    Configuration conf = new Configuration();
+    conf.setInt(LshCandidates.SignatureMapperClass.MINHASH_BANDS, 5);
+    conf.setInt(LshCandidates.SignatureMapperClass.MINHASH_ROWS, 3);
+    conf.setInt(LshCandidates.SignatureMapperClass.SIMHASH_BANDS, 4);
+    conf.setInt(LshCandidates.SignatureMapperClass.SIMHASH_ROWS, 64);
+    Output<Text, Text> signatures =
+        TaskDriver.map(new LshCandidates.SignatureMapperClass(), conf, vectorRecords(vectors()));
+
+    Set<String> cat = buckets(signatures, "cat");
+    assertEquals(5 + 2 * 4, cat.size()); // One bucket per MinHash band and per SimHash band of each measure
+    assertEquals(cat, buckets(signatures, "kitten"));
+    Set<String> bands = new HashSet<>();
+    for (String bucket : cat) {
+      bands.add(bucket.substring(0, bucket.lastIndexOf(':')));
+    }
+    assertEquals(cat.size(), bands.size());
+    assertTrue(bands.contains("minhash-plain:4"));
+    assertTrue(bands.contains("simhash-pmi:3"));
+    assertTrue(bands.contains("simhash-t_test:0"));
+    assertFalse(buckets(signatures, "dog").equals(cat));
+
+    Set<String> stone = buckets(signatures, "stone"); // Negative PMI and t-test values project as well
+    assertEquals(5 + 2 * 4, stone.size());
+  }
+
+  @Test
+  public void testSignatureSkipsVectorsWithoutWeights() throws IOException, InterruptedException {
+    Configuration conf = new Configuration();
+    conf.set(LshCandidates.SignatureMapperClass.MINHASH_MEASURE, AssociationMeasure.Standard.PMI.getName());
+    conf.set(LshCandidates.SignatureMapperClass.SIMHASH_MEASURES, "");
+    Map<String, LexemeVectorWritable> vectors = new LinkedHashMap<>();
+    vectors.put("stone", vectors().get("stone")); // No positive PMI value to sample
+    vectors.put("cat", vectors().get("cat"));
+    Output<Text, Text> signatures = TaskDriver.map(new LshCandidates.SignatureMapperClass(), conf, vectorRecords(vectors));
+    assertTrue(buckets(signatures, "stone").isEmpty());
+    assertEquals(16, buckets(signatures, "cat").size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSimHashRowsFitALong() throws IOException, InterruptedException {
+    Configuration conf = new Configuration();
+    conf.setInt(LshCandidates.SignatureMapperClass.SIMHASH_ROWS, 65);
+    TaskDriver.map(new LshCandidates.SignatureMapperClass(), conf, vectorRecords(vectors()));
+  }
+
+  @Test
+  public void testBucketPairs() throws IOException, InterruptedException {
+    List<Record<Text, Text>> input = new ArrayList<>();
+    for (String lexeme : new String[] {"dog", "cat", "dog", "ant"}) {
+      input.add(TaskDriver.record(new Text("minhash-plain:0:1f"), new Text(lexeme)));
+    }
+    for (String lexeme : new String[] {"a", "b", "c"}) {
+      input.add(TaskDriver.record(new Text("simhash-pmi:0:ff"), new Text(lexeme)));
+    }
+    Configuration conf = new Configuration();
+    conf.setInt(LshCandidates.BucketReducerClass.MAX_BUCKET_LEXEMES, 4);
+    Output<TextPairWritable, NullWritable> pairs =
+        TaskDriver.reduce(new LshCandidates.BucketReducerClass(), conf, input, null);
+    assertEquals(0, pairs.getCounter(CounterTypes.LSH_OVERSIZED_BUCKETS));
+    List<String> written = new ArrayList<>();
+    for (Record<TextPairWritable, NullWritable> pair : pairs.records) {
+      written.add(pair.key.toString());
+    }
+    // A lexeme written twice to a bucket is not paired with itself, a pair of it is written per copy
+    assertEquals(Arrays.asList("ant\tcat", "ant\tdog", "ant\tdog", "cat\tdog", "cat\tdog", "a\tb", "a\tc", "b\tc"), written);
+
+    conf.setInt(LshCandidates.BucketReducerClass.MAX_BUCKET_LEXEMES, 3);
+    pairs = TaskDriver.reduce(new LshCandidates.BucketReducerClass(), conf, input, null);
+    assertEquals(1, pairs.getCounter(CounterTypes.LSH_OVERSIZED_BUCKETS));
+    assertEquals(3, pairs.records.size());
+  }
+
+  @Test
+  public void testDistinctCombinerWritesEachPairOnce() throws IOException, InterruptedException {
+    List<Record<TextPairWritable, LexemeVectorWritable>> input = new ArrayList<>();
+    input.add(candidate("cat", "dog"));
+    input.add(candidate("cat", "kitten"));
+    input.add(candidate("cat", "dog"));
+    input.add(TaskDriver.record(new TextPairWritable("cat", ""), vectors().get("cat")));
+    Output<TextPairWritable, LexemeVectorWritable> combined =
+        TaskDriver.reduce(new LshCandidates.DistinctCombinerClass(), new Configuration(), input, null);
+    assertEquals(3, combined.records.size());
+    assertPair("cat", "", combined.records.get(0).key);
+    assertEquals(2, combined.records.get(0).value.size());
+    assertPair("cat", "dog", combined.records.get(1).key);
+    assertEquals(0, combined.records.get(1).value.size());
+    assertPair("cat", "kitten", combined.records.get(2).key);
+  }
+
+  @Test
+  public void testFirstVectorsJoinDropsRepeatedCandidates() throws IOException, InterruptedException {
+    LexemeVectorWritable cat = vectors().get("cat");
+    List<Record<TextPairWritable, LexemeVectorWritable>> input = new ArrayList<>();
+    input.add(candidate("cat", "kitten"));
+    input.add(candidate("cat", "dog"));
+    input.add(candidate("cat", "kitten")); // Candidate of another map task
+    input.add(TaskDriver.record(new TextPairWritable("cat", ""), cat));
+    input.add(candidate("dog", "stone")); // Lexeme without a vector, not joined with the previous one
+    Output<TextPairWritable, LexemeVectorWritable> joined =
+        TaskDriver.reduce(
+            new LshCandidates.FirstVectorsReducerClass(),
+            new Configuration(),
+            input,
+            new AllPairsSimilarity.FirstLexemeGroupingComparator());
+    assertEquals(2, joined.records.size());
+    assertPair("dog", "cat", joined.records.get(0).key);
+    assertPair("kitten", "cat", joined.records.get(1).key);
+    for (int i = 0; i < 2; ++i) {
+      assertEquals(cat.size(), joined.records.get(i).value.size());
+      assertArrayEquals(cat.getAggregates(), joined.records.get(i).value.getAggregates(), 0);
+    }
+  }
+
+  @Test
+  public void testCandidatesMatchKernel() throws IOException, InterruptedException {
+    Map<String, LexemeVectorWritable> vectors = vectors();
+    Configuration conf = new Configuration();
+    conf.setFloat(AllPairsSimilarity.PairsReducerClass.THRESHOLD, -1);
+    List<Record<TextPairWritable, NullWritable>> candidates = new ArrayList<>();
+    for (String[] pair : new String[][] {{"cat", "kitten"}, {"cat", "dog"}, {"cat", "kitten"}, {"dog", "stone"}}) {
+      candidates.add(TaskDriver.record(new TextPairWritable(pair[0], pair[1]), NullWritable.get()));
+    }
+
+    List<Record<TextPairWritable, LexemeVectorWritable>> firstJoin = new ArrayList<>();
+    firstJoin.addAll(TaskDriver.map(new LshCandidates.CandidatesMapperClass(), conf, candidates).records);
+    Output<TextPairWritable, LexemeVectorWritable> lexemeVectors =
+        TaskDriver.map(new LshCandidates.VectorsMapperClass(), conf, vectorRecords(vectors));
+    firstJoin.addAll(lexemeVectors.records);
+    Output<TextPairWritable, LexemeVectorWritable> joined =
+        TaskDriver.reduce(
+            new LshCandidates.FirstVectorsReducerClass(),
+            conf,
+            TaskDriver.reduce(new LshCandidates.DistinctCombinerClass(), conf, firstJoin, null).records,
+            new AllPairsSimilarity.FirstLexemeGroupingComparator());
+
+    List<Record<TextPairWritable, LexemeVectorWritable>> secondJoin = new ArrayList<>(joined.records);
+    secondJoin.addAll(lexemeVectors.records);
+    Output<Text, SimilarityVectorWritable> pairs =
+        TaskDriver.reduce(
+            new LshCandidates.CandidatesReducerClass(),
+            conf,
+            secondJoin,
+            new AllPairsSimilarity.FirstLexemeGroupingComparator());
+    Map<String, double[]> expected = new LinkedHashMap<>();
+    expected.put("<cat,dog>", similarity(vectors.get("cat"), vectors.get("dog")));
+    expected.put("<cat,kitten>", similarity(vectors.get("cat"), vectors.get("kitten")));
+    expected.put("<dog,stone>", similarity(vectors.get("dog"), vectors.get("stone")));
+    assertEquals(expected.size(), pairs.records.size());
+    for (Record<Text, SimilarityVectorWritable> pair : pairs.records) {
+      assertTrue(pair.key.toString(), expected.containsKey(pair.key.toString()));
+      assertArrayEquals(expected.get(pair.key.toString()), pair.value.similarityVector, DELTA);
+    }
+  }
+
+  @Test
+  public void testRecall() throws IOException, InterruptedException {
+    Configuration conf = new Configuration();
+    List<Record<Text, Text>> exactPairs = new ArrayList<>();
+    for (String pair : new String[] {"<a,b>", "<a,c>", "<b,c>"}) {
+      exactPairs.add(TaskDriver.record(new Text(pair), new Text("[]")));
+    }
+    List<Record<Text, Text>> candidatePairs = new ArrayList<>();
+    for (String pair : new String[] {"<a,b>", "<b,c>", "<c,d>"}) {
+      candidatePairs.add(TaskDriver.record(new Text(pair), new Text("[]")));
+    }
+    List<Record<Text, BooleanWritable>> input = new ArrayList<>();
+    input.addAll(TaskDriver.map(new LshCandidates.ExactPairsMapperClass(), conf, exactPairs).records);
+    input.addAll(TaskDriver.map(new LshCandidates.CandidatePairsMapperClass(), conf, candidatePairs).records);
+    Output<Text, NullWritable> missed =
+        TaskDriver.reduce(new LshCandidates.RecallReducerClass(), conf, input, null);
+    assertEquals(3, missed.getCounter(CounterTypes.LSH_EXACT_PAIRS));
+    assertEquals(2, missed.getCounter(CounterTypes.LSH_RECALLED_PAIRS));
+    assertEquals(1, missed.records.size());
+    assertEquals(new Text("<a,c>"), missed.records.get(0).key);
+  }
+}
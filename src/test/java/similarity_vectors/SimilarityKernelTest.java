@@ -0,0 +1,187 @@
+package similarity_vectors;
+
+import measures_association.AssociationMeasuresWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SimilarityKernelTest {
+
+  private static final double DELTA = 1e-9;
+
+  private static LexemeVectorWritable vector(AssociationMeasuresWritable... features) {
+    LexemeVectorWritable vector = new LexemeVectorWritable();
+    for (AssociationMeasuresWritable feature : features) {
+      vector.add(feature);
+    }
+    vector.sortByFeature();
+    vector.aggregate();
+    return vector;
+  }
+
+  private static AssociationMeasuresWritable feature(
+      String feature, long plain, double relative, double pmi, double tTest) {
+    return new AssociationMeasuresWritable("lexeme", feature, plain, relative, pmi, tTest);
+  }
+
+  private static double[] similarity(LexemeVectorWritable vector1, LexemeVectorWritable vector2) {
+    SimilarityKernel kernel = new SimilarityKernel();
+    kernel.reset();
+    kernel.addIntersection(vector1, vector2);
+    return kernel.getSimilarityVector(vector1.getAggregates(), 0, vector2.getAggregates(), 0);
+  }
+
+  /** The sums of the single pass similarity computation, over the merged features of both vectors */
+  private static double[] baseline(LexemeVectorWritable vector1, LexemeVectorWritable vector2) {
+    int measures = SimilarityKernel.MEASURES.length;
+    double[] similarityVector = new double[SimilarityKernel.VECTOR_SIZE];
+    for (int measure = 0; measure < measures; ++measure) {
+      double subAbs = 0, subSquared = 0, mult = 0, min = 0, max = 0, add = 0;
+      double squares1 = 0, squares2 = 0, kullbackLeibler1 = 0, kullbackLeibler2 = 0;
+      int i = 0;
+      int j = 0;
+      while (i < vector1.size() || j < vector2.size()) {
+        int compare =
+            i == vector1.size() ? 1
+                : j == vector2.size() ? -1
+                : vector1.getFeature(i).compareTo(vector2.getFeature(j));
+        if (compare == 0) {
+          double value1 = vector1.getValues()[vector1.getValuesOffset(i++) + measure];
+          double value2 = vector2.getValues()[vector2.getValuesOffset(j++) + measure];
+          squares1 += Math.pow(value1, 2);
+          squares2 += Math.pow(value2, 2);
+          subAbs += Math.abs(value1 - value2);
+          subSquared += Math.pow(value1 - value2, 2);
+          mult += value1 * value2;
+          min += Math.min(value1, value2);
+          max += Math.max(value1, value2);
+          add += value1 + value2;
+          kullbackLeibler1 += kullbackLeibler(value1, value2);
+          kullbackLeibler2 += kullbackLeibler(value2, value1);
+        } else {
+          boolean first = compare < 0;
+          double value =
+              first
+                  ? vector1.getValues()[vector1.getValuesOffset(i++) + measure]
+                  : vector2.getValues()[vector2.getValuesOffset(j++) + measure];
+          if (first) {
+            squares1 += Math.pow(value, 2);
+            kullbackLeibler1 += selfTerm(value);
+          } else {
+            squares2 += Math.pow(value, 2);
+            kullbackLeibler2 += selfTerm(value);
+          }
+          subAbs += value;
+          subSquared += Math.pow(value, 2);
+          max += value;
+          add += value;
+        }
+      }
+      int offset = measure * SimilarityKernel.SIMILARITIES.length;
+      similarityVector[offset] = subAbs;
+      similarityVector[offset + 1] = Math.sqrt(subSquared);
+      similarityVector[offset + 2] = mult / (Math.sqrt(squares1) * Math.sqrt(squares2));
+      similarityVector[offset + 3] = min / max;
+      similarityVector[offset + 4] = (2 * min) / add;
+      similarityVector[offset + 5] = kullbackLeibler1 + kullbackLeibler2;
+    }
+    return similarityVector;
+  }
+
+  private static double kullbackLeibler(double value, double other) {
+    return Double.isNaN(Math.log((value / ((value + other) / 2))))
+        ? 0
+        : (value * Math.log((value / ((value + other) / 2))));
+  }
+
+  /** Guarded as the Kullback-Leibler terms, a 0 value of one vector would otherwise add NaN */
+  private static double selfTerm(double value) {
+    return Double.isNaN(Math.log((value / (value / 2))))
+        ? 0
+        : (value * Math.log((value / (value / 2))));
+  }
+
+  @Test
+  public void testAggregatesAndIntersectionMatchBaseline() {
+    LexemeVectorWritable vector1 =
+        vector(
+            feature("dog/nsubj", 12, 0.3, 1.7, 2.4),
+            feature("big/amod", 5, 0.125, -0.4, -1.1),
+            feature("run/ROOT", 3, 0.075, 2.2, 0.6),
+            feature("red/amod", 1, 0.025, 0.9, 0.2));
+    LexemeVectorWritable vector2 =
+        vector(
+            feature("big/amod", 7, 0.35, 0.8, 1.3),
+            feature("eat/ROOT", 2, 0.1, -1.5, -0.3),
+            feature("dog/nsubj", 9, 0.45, 1.1, 2.0),
+            feature("car/dobj", 2, 0.1, 0.5, 0.4));
+    assertArrayEquals(baseline(vector1, vector2), similarity(vector1, vector2), DELTA);
+    assertArrayEquals(baseline(vector2, vector1), similarity(vector2, vector1), DELTA);
+  }
+
+  @Test
+  public void testNoSharedFeaturesMatchBaseline() {
+    LexemeVectorWritable vector1 = vector(feature("a/amod", 4, 0.4, 1.2, 0.7));
+    LexemeVectorWritable vector2 =
+        vector(feature("b/amod", 2, 0.2, -0.3, 0.1), feature("c/nsubj", 6, 0.6, 0.4, 1.9));
+    assertArrayEquals(baseline(vector1, vector2), similarity(vector1, vector2), DELTA);
+  }
+
+  @Test
+  public void testZeroValuesMatchBaseline() {
+    LexemeVectorWritable vector1 =
+        vector(
+            feature("a/amod", 3, 0.3, 0, 0.5), // 0 value of a feature of one vector
+            feature("b/amod", 2, 0.2, 0, 0), // 0 values shared with 0 values
+            feature("c/nsubj", 4, 0.4, 1.3, 0.7));
+    LexemeVectorWritable vector2 =
+        vector(
+            feature("b/amod", 1, 0.1, 0, 0),
+            feature("c/nsubj", 2, 0.2, 0.6, 1.4),
+            feature("d/dobj", 5, 0.5, 0.8, 0));
+    double[] expected = baseline(vector1, vector2);
+    double[] actual = similarity(vector1, vector2);
+    assertArrayEquals(expected, actual, DELTA);
+    for (int i = 0; i < actual.length; ++i) {
+      assertFalse("position " + i, Double.isNaN(actual[i]));
+    }
+    for (double aggregate : vector1.getAggregates()) {
+      assertFalse(Double.isNaN(aggregate));
+    }
+  }
+
+  @Test
+  public void testSplitIntersectionSumsAddUp() {
+    LexemeVectorWritable vector1 =
+        vector(feature("a", 3, 0.3, 0.2, 0.5), feature("b", 2, 0.2, 1.4, 0.9), feature("c", 5, 0.5, -0.6, 1.2));
+    LexemeVectorWritable vector2 =
+        vector(feature("a", 1, 0.1, 0.7, 0.3), feature("b", 4, 0.4, 0.3, 1.1), feature("c", 5, 0.5, 0.9, 0.8));
+    SimilarityKernel partial = new SimilarityKernel();
+    SimilarityKernel pair = new SimilarityKernel();
+    pair.reset();
+    for (int i = 0; i < vector1.size(); ++i) { // One partial per shared feature, as the posting lists emit them
+      partial.reset();
+      partial.addIntersection(
+          vector1.getValues(), vector1.getValuesOffset(i), vector2.getValues(), vector2.getValuesOffset(i));
+      pair.addIntersectionSums(partial.getIntersectionSums());
+    }
+    assertArrayEquals(
+        similarity(vector1, vector2),
+        pair.getSimilarityVector(vector1.getAggregates(), 0, vector2.getAggregates(), 0),
+        DELTA);
+  }
+
+  @Test
+  public void testMeasureIndex() {
+    for (int i = 0; i < SimilarityKernel.MEASURES.length; ++i) {
+      assertEquals(i, SimilarityKernel.getMeasureIndex(SimilarityKernel.MEASURES[i].getName()));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMeasureIndex() {
+    SimilarityKernel.getMeasureIndex("unknown");
+  }
+}
@@ -0,0 +1,293 @@
+package utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs a mapper or a reducer in memory over a list of records, the way a task of the job would: the
+ * reduce input is sorted by the key order and grouped by the grouping comparator, the values are
+ * deserialized into reused objects and the written records are copied. The counters of the run are
+ * kept with its output.
+ */
+public class TaskDriver {
+
+  public static class Record<K, V> {
+    public final K key;
+    public final V value;
+
+    Record(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    @Override
+    public String toString() {
+      return key + "\t" + value;
+    }
+  }
+
+  public static class Output<K, V> {
+    public final List<Record<K, V>> records = new ArrayList<>();
+    private final Counters counters = new Counters();
+
+    public long getCounter(Enum<?> counter) {
+      return counters.findCounter(counter).getValue();
+    }
+  }
+
+  public static <K, V> Record<K, V> record(K key, V value) {
+    return new Record<>(key, value);
+  }
+
+  /** Runs the mapper over the records in their order */
+  public static <KI, VI, KO extends Writable, VO extends Writable> Output<KO, VO> map(
+      Mapper<KI, VI, KO, VO> mapper, Configuration conf, List<Record<KI, VI>> input)
+      throws IOException, InterruptedException {
+    Output<KO, VO> output = new Output<>();
+    Mapper<KI, VI, KO, VO>.Context context =
+        new WrappedMapper<KI, VI, KO, VO>()
+            .getMapContext(
+                new MapContextImpl<>(
+                    conf,
+                    new TaskAttemptID("test", 0, TaskType.MAP, 0, 0),
+                    new ListRecordReader<>(input),
+                    new CopyingRecordWriter<>(output, conf),
+                    new NullOutputCommitter(),
+                    new CountersReporter(output.counters),
+                    (InputSplit) null));
+    mapper.run(context);
+    return output;
+  }
+
+  /**
+   * Runs the reducer over the records sorted by their key, grouped by the grouping comparator or by
+   * the whole key when it is null. The input must not be empty, its first record gives the classes.
+   */
+  @SuppressWarnings("unchecked")
+  public static <KI extends WritableComparable<? super KI>, VI extends Writable, KO extends Writable, VO extends Writable>
+      Output<KO, VO> reduce(
+          Reducer<KI, VI, KO, VO> reducer,
+          Configuration conf,
+          List<Record<KI, VI>> input,
+          RawComparator<KI> grouping)
+          throws IOException, InterruptedException {
+    Class<KI> keyClass = (Class<KI>) input.get(0).key.getClass();
+    Class<VI> valueClass = (Class<VI>) input.get(0).value.getClass();
+    List<Record<KI, VI>> sorted = new ArrayList<>(input);
+    sorted.sort(Comparator.comparing(record -> record.key)); // Stable, equal keys keep their input order
+    List<byte[][]> serialized = new ArrayList<>();
+    for (Record<KI, VI> record : sorted) {
+      serialized.add(new byte[][] {toBytes(record.key), toBytes(record.value)});
+    }
+
+    Output<KO, VO> output = new Output<>();
+    CountersReporter reporter = new CountersReporter(output.counters);
+    Reducer<KI, VI, KO, VO>.Context context =
+        new WrappedReducer<KI, VI, KO, VO>()
+            .getReducerContext(
+                new ReduceContextImpl<>(
+                    conf,
+                    new TaskAttemptID("test", 0, TaskType.REDUCE, 0, 0),
+                    new ListKeyValueIterator(serialized),
+                    reporter.getCounter(TaskCounter.REDUCE_INPUT_GROUPS),
+                    reporter.getCounter(TaskCounter.REDUCE_INPUT_RECORDS),
+                    new CopyingRecordWriter<>(output, conf),
+                    new NullOutputCommitter(),
+                    reporter,
+                    grouping != null ? grouping : (RawComparator<KI>) WritableComparator.get(sortClass(keyClass)),
+                    keyClass,
+                    valueClass));
+    reducer.run(context);
+    return output;
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static Class<? extends WritableComparable> sortClass(Class<?> keyClass) {
+    return keyClass.asSubclass(WritableComparable.class);
+  }
+
+  private static byte[] toBytes(Writable writable) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    writable.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static class ListRecordReader<K, V> extends RecordReader<K, V> {
+    private final Iterator<Record<K, V>> records;
+    private Record<K, V> current;
+
+    ListRecordReader(List<Record<K, V>> records) {
+      this.records = records.iterator();
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {}
+
+    @Override
+    public boolean nextKeyValue() {
+      current = records.hasNext() ? records.next() : null;
+      return current != null;
+    }
+
+    @Override
+    public K getCurrentKey() {
+      return current.key;
+    }
+
+    @Override
+    public V getCurrentValue() {
+      return current.value;
+    }
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static class ListKeyValueIterator implements RawKeyValueIterator {
+    private final Iterator<byte[][]> records;
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+
+    ListKeyValueIterator(List<byte[][]> records) {
+      this.records = records.iterator();
+    }
+
+    @Override
+    public DataInputBuffer getKey() {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean next() {
+      if (!records.hasNext()) return false;
+      byte[][] record = records.next();
+      key.reset(record[0], record[0].length);
+      value.reset(record[1], record[1].length);
+      return true;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Progress getProgress() {
+      return new Progress();
+    }
+  }
+
+  /** Copies the written records, the task reuses the objects it writes */
+  private static class CopyingRecordWriter<K extends Writable, V extends Writable> extends RecordWriter<K, V> {
+    private final Output<K, V> output;
+    private final Configuration conf;
+
+    CopyingRecordWriter(Output<K, V> output, Configuration conf) {
+      this.output = output;
+      this.conf = conf;
+    }
+
+    @Override
+    public void write(K key, V value) {
+      output.records.add(record(copy(key), copy(value)));
+    }
+
+    private <T extends Writable> T copy(T writable) {
+      return writable instanceof NullWritable ? writable : WritableUtils.clone(writable, conf);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) {}
+  }
+
+  private static class CountersReporter extends StatusReporter {
+    private final Counters counters;
+
+    CountersReporter(Counters counters) {
+      this.counters = counters;
+    }
+
+    @Override
+    public Counter getCounter(Enum<?> name) {
+      return counters.findCounter(name);
+    }
+
+    @Override
+    public Counter getCounter(String group, String name) {
+      return counters.findCounter(group, name);
+    }
+
+    @Override
+    public void progress() {}
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+
+    @Override
+    public void setStatus(String status) {}
+  }
+
+  private static class NullOutputCommitter extends OutputCommitter {
+    @Override
+    public void setupJob(JobContext jobContext) {}
+
+    @Override
+    public void setupTask(TaskAttemptContext taskContext) {}
+
+    @Override
+    public boolean needsTaskCommit(TaskAttemptContext taskContext) {
+      return false;
+    }
+
+    @Override
+    public void commitTask(TaskAttemptContext taskContext) {}
+
+    @Override
+    public void abortTask(TaskAttemptContext taskContext) {}
+  }
+}